@@ -1,5 +1,6 @@
 package com.urlshortener;
 
+import com.urlshortener.cache.RedirectCacheWarmer;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.info.Info;
@@ -24,9 +25,11 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 public class UrlShortenerApplication {
 
     private final Environment environment;
+    private final RedirectCacheWarmer redirectCacheWarmer;
 
-    public UrlShortenerApplication(Environment environment) {
+    public UrlShortenerApplication(Environment environment, RedirectCacheWarmer redirectCacheWarmer) {
         this.environment = environment;
+        this.redirectCacheWarmer = redirectCacheWarmer;
     }
 
     public static void main(String[] args) {
@@ -38,5 +41,8 @@ public class UrlShortenerApplication {
         String port = environment.getProperty("server.port", "8080");
         String contextPath = environment.getProperty("server.servlet.context-path", "");
         log.info("URL Shortener started on port {} with context path '{}'", port, contextPath);
+
+        // Readiness flips to ACCEPTING_TRAFFIC only after ready listeners return
+        redirectCacheWarmer.warmUp();
     }
 }
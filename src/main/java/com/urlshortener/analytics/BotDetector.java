@@ -0,0 +1,174 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Recognizes clicks from crawlers and link-preview fetchers, either by a token in the user agent,
+ * matched case-insensitively in one pass over it, or by a client IP inside a configured range.
+ * Depending on the configured action, recognized clicks are stored tagged as bots or dropped
+ * before anything is written or counted.
+ */
+@Slf4j
+@Component
+public class BotDetector {
+
+    private final boolean enabled;
+    private final Action action;
+    private final TokenMatcher userAgentTokens;
+    // Merged, sorted ranges of 128-bit addresses, IPv4 as IPv4-mapped, sign bit flipped like GeoIpDatabase
+    private final long[] rangeStartsHigh;
+    private final long[] rangeStartsLow;
+    private final long[] rangeEndsHigh;
+    private final long[] rangeEndsLow;
+    private final ThreadLocal<IpAddresses.Parsed> parsed = ThreadLocal.withInitial(IpAddresses.Parsed::new);
+    private final Counter detected;
+
+    public BotDetector(MeterRegistry meterRegistry,
+                       @Value("${app.analytics.bots.enabled:true}") boolean enabled,
+                       @Value("${app.analytics.bots.action:TAG}") Action action,
+                       @Value("${app.analytics.bots.user-agent-tokens:bot,crawl,spider}") String userAgentTokens,
+                       @Value("${app.analytics.bots.ip-ranges:}") String ipRanges) {
+        this.enabled = enabled;
+        this.action = action;
+        this.userAgentTokens = new TokenMatcher(split(userAgentTokens));
+        long[][] ranges = parseRanges(split(ipRanges));
+        this.rangeStartsHigh = ranges[0];
+        this.rangeStartsLow = ranges[1];
+        this.rangeEndsHigh = ranges[2];
+        this.rangeEndsLow = ranges[3];
+        this.detected = Counter.builder("clicks.bots")
+                .description("Clicks recognized as bots")
+                .tag("action", action.name().toLowerCase())
+                .register(meterRegistry);
+        log.info("Bot detection {}: {} user agent matcher states, {} IP ranges, action {}",
+                enabled ? "enabled" : "disabled", this.userAgentTokens.stateCount(), ipRangeCount(), action);
+    }
+
+    public Action action() {
+        return action;
+    }
+
+    public boolean isBot(String userAgent, String ipAddress) {
+        if (!enabled) {
+            return false;
+        }
+        boolean bot = userAgentTokens.matches(userAgent) || inRange(ipAddress);
+        if (bot) {
+            detected.increment();
+        }
+        return bot;
+    }
+
+    // Disjoint ranges left after merging the configured blocks
+    int ipRangeCount() {
+        return rangeStartsHigh.length;
+    }
+
+    private boolean inRange(String ipAddress) {
+        if (rangeStartsHigh.length == 0) {
+            return false;
+        }
+        IpAddresses.Parsed address = parsed.get();
+        if (!IpAddresses.parse(ipAddress, address)) {
+            return false;
+        }
+        long keyHigh = address.high() ^ Long.MIN_VALUE;
+        long keyLow = address.low() ^ Long.MIN_VALUE;
+        int low = 0;
+        int high = rangeStartsHigh.length - 1;
+        // Last range starting at or before the address
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(rangeStartsHigh[mid], rangeStartsLow[mid], keyHigh, keyLow) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && compare(keyHigh, keyLow, rangeEndsHigh[high], rangeEndsLow[high]) <= 0;
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            if (!value.isBlank()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    // CIDR blocks such as 66.249.64.0/19 or 2001:4860:4801::/48; a bare address is a single-address block
+    private static long[][] parseRanges(List<String> cidrs) {
+        List<long[]> ranges = new ArrayList<>(cidrs.size());
+        IpAddresses.Parsed address = new IpAddresses.Parsed();
+        for (String cidr : cidrs) {
+            int slash = cidr.indexOf('/');
+            String base = slash < 0 ? cidr : cidr.substring(0, slash);
+            if (!IpAddresses.parse(base, address)) {
+                throw new IllegalArgumentException("Invalid bot IP range: " + cidr);
+            }
+            int maxLength = address.isIpv4() ? 32 : 128;
+            int prefixLength;
+            try {
+                prefixLength = slash < 0 ? maxLength : Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid bot IP range: " + cidr, e);
+            }
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                throw new IllegalArgumentException("Invalid bot IP range: " + cidr);
+            }
+            int bits = address.isIpv4() ? 96 + prefixLength : prefixLength;
+            long maskHigh = bits >= 64 ? -1L : bits == 0 ? 0 : -1L << (64 - bits);
+            long maskLow = bits <= 64 ? 0 : bits == 128 ? -1L : -1L << (128 - bits);
+            long startHigh = address.high() & maskHigh;
+            long startLow = address.low() & maskLow;
+            ranges.add(new long[]{
+                    startHigh ^ Long.MIN_VALUE, startLow ^ Long.MIN_VALUE,
+                    (startHigh | ~maskHigh) ^ Long.MIN_VALUE, (startLow | ~maskLow) ^ Long.MIN_VALUE
+            });
+        }
+        ranges.sort(Comparator.<long[]>comparingLong(r -> r[0]).thenComparingLong(r -> r[1]));
+
+        // Overlapping or nested blocks are merged so the ranges searched are disjoint
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && compare(range[0], range[1], last[2], last[3]) <= 0) {
+                if (compare(range[2], range[3], last[2], last[3]) > 0) {
+                    last[2] = range[2];
+                    last[3] = range[3];
+                }
+            } else {
+                merged.add(range);
+            }
+        }
+        long[][] columns = new long[4][merged.size()];
+        for (int i = 0; i < merged.size(); i++) {
+            for (int column = 0; column < 4; column++) {
+                columns[column][i] = merged.get(i)[column];
+            }
+        }
+        return columns;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int result = Long.compare(high1, high2);
+        return result != 0 ? result : Long.compare(low1, low2);
+    }
+
+    public enum Action {
+        // Store the click with is_bot set; it still counts towards click_count
+        TAG,
+        // Drop the click before it is written or counted
+        DROP
+    }
+}
@@ -0,0 +1,45 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.service.AnalyticsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Catches up clicks that instances of an older release wrote during a rolling deploy. Those
+ * clicks land after the ids the backfills stop at, without what this release derives at ingest;
+ * a trigger queues them (see V13), and each run here derives it for one batch of them.
+ */
+@Slf4j
+@Component
+public class ClickCatchUp {
+
+    private final AnalyticsService analyticsService;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public ClickCatchUp(AnalyticsService analyticsService,
+                        @Value("${app.analytics.catch-up.enabled:true}") boolean enabled,
+                        @Value("${app.analytics.catch-up.batch-size:1000}") int batchSize) {
+        this.analyticsService = analyticsService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    // One batch per run; queued entries are locked with SKIP LOCKED, so instances share the work
+    @Scheduled(fixedDelayString = "${app.analytics.catch-up.interval-ms:10000}")
+    public void catchUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int caughtUp = analyticsService.catchUpClicks(batchSize);
+            if (caughtUp > 0) {
+                log.info("Caught up {} clicks written by older instances", caughtUp);
+            }
+        } catch (RuntimeException e) {
+            log.error("Click catch-up failed, will retry", e);
+        }
+    }
+}
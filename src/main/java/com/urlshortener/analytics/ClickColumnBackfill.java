@@ -0,0 +1,187 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.entity.ClickDimension.Dimension;
+import com.urlshortener.repository.ClickColumnBackfillRepository;
+import com.urlshortener.repository.ClickColumnBackfillRepository.ConvertedClick;
+import com.urlshortener.repository.ClickColumnBackfillRepository.Progress;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills click_analytics columns that were added after clicks had been written: the dictionary ids
+ * from the text user agent, referer, device type, browser and os, ip_bytes from the text
+ * ip_address, and referer_host_id from the referer. Migrations only add the columns, so they lock
+ * nothing for long, and the rows are converted here a chunk of ids per transaction, with the same
+ * parsing, truncation and referer normalization as new clicks get. Backfills that read the
+ * converted columns wait for {@link #isReady()}.
+ *
+ * <p>New clicks no longer write the text columns, and converting a click clears them. Once every
+ * click is converted, the columns are dropped after drop-text-columns-after, by when no instance
+ * of a release that still writes or reads them should be running.
+ */
+@Slf4j
+@Component
+public class ClickColumnBackfill {
+
+    // As AnalyticsService truncates the values of new clicks, so converted clicks share their dictionary entries
+    private static final int MAX_USER_AGENT_LENGTH = 512;
+    private static final int MAX_REFERER_LENGTH = 2048;
+
+    private final ClickColumnBackfillRepository clickColumnBackfillRepository;
+    private final RefererNormalizer refererNormalizer;
+    private final DimensionDictionary dimensionDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int ipv4PrefixLength;
+    private final int ipv6PrefixLength;
+    private final Duration dropTextColumnsAfter;
+
+    private volatile boolean ready;
+    private volatile boolean unconverted;
+    private volatile boolean textColumnsDropped;
+
+    public ClickColumnBackfill(ClickColumnBackfillRepository clickColumnBackfillRepository,
+                               RefererNormalizer refererNormalizer,
+                               DimensionDictionary dimensionDictionary,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${app.analytics.column-backfill.enabled:true}") boolean enabled,
+                               @Value("${app.analytics.column-backfill.chunk-size:10000}") int chunkSize,
+                               @Value("${app.analytics.ip-truncation.ipv4-prefix-length:32}") int ipv4PrefixLength,
+                               @Value("${app.analytics.ip-truncation.ipv6-prefix-length:128}") int ipv6PrefixLength,
+                               @Value("${app.analytics.column-backfill.drop-text-columns-after:24h}") Duration dropTextColumnsAfter) {
+        this.clickColumnBackfillRepository = clickColumnBackfillRepository;
+        this.refererNormalizer = refererNormalizer;
+        this.dimensionDictionary = dimensionDictionary;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.ipv4PrefixLength = ipv4PrefixLength;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        this.dropTextColumnsAfter = dropTextColumnsAfter;
+    }
+
+    // Disabled means the columns are taken as converted, as on a database created with them
+    public boolean isReady() {
+        return ready || !enabled;
+    }
+
+    // Whether some clicks may still hold their values only as text, so distinct counts and exports read the text
+    // columns too. False until the first run has read the progress row, as the columns may be gone by then
+    public boolean hasUnconvertedClicks() {
+        return enabled && unconverted;
+    }
+
+    // One chunk per run, so a long backfill never holds a scheduler thread for more than one transaction
+    @Scheduled(fixedDelayString = "${app.analytics.column-backfill.interval-ms:1000}")
+    public void backfill() {
+        if (isReady()) {
+            return;
+        }
+        try {
+            Progress progress = transactionTemplate.execute(status -> backfillChunk());
+            if (progress.isComplete()) {
+                textColumnsDropped = progress.textColumnsDropped();
+                unconverted = false;
+                ready = true;
+                log.info("Click column backfill complete");
+            } else {
+                unconverted = true;
+            }
+        } catch (RuntimeException e) {
+            log.error("Click column backfill failed, will retry", e);
+        }
+    }
+
+    // Waits out drop-text-columns-after from the backfill's completion and for the catch-up queue to empty, since
+    // clicks of older instances still arrive with only the text values
+    @Scheduled(fixedDelayString = "${app.analytics.column-backfill.drop-check-interval-ms:60000}")
+    public void dropTextColumns() {
+        if (!enabled || !ready || textColumnsDropped) {
+            return;
+        }
+        try {
+            Boolean dropped = transactionTemplate.execute(status -> {
+                Progress progress = clickColumnBackfillRepository.lockBackfillProgress();
+                if (progress.textColumnsDropped()) {
+                    return true;
+                }
+                if (progress.completedAt() == null) {
+                    return false;
+                }
+                LocalDateTime dropAfter = progress.completedAt().toLocalDateTime().plus(dropTextColumnsAfter);
+                if (LocalDateTime.now().isBefore(dropAfter) || clickColumnBackfillRepository.hasQueuedCatchUp()) {
+                    return false;
+                }
+                clickColumnBackfillRepository.dropTextColumns();
+                log.info("Dropped the text columns of click_analytics; clicks only keep ip_bytes and dictionary ids");
+                return true;
+            });
+            textColumnsDropped = Boolean.TRUE.equals(dropped);
+        } catch (RuntimeException e) {
+            log.error("Dropping the text columns of click_analytics failed, will retry", e);
+        }
+    }
+
+    // One chunk per transaction; the progress row lock keeps other instances from converting the same clicks
+    private Progress backfillChunk() {
+        Progress progress = clickColumnBackfillRepository.lockBackfillProgress();
+        long lastClickId = progress.lastClickId();
+        long targetClickId = progress.targetClickId();
+        if (progress.isComplete()) {
+            if (progress.completedAt() == null) {
+                clickColumnBackfillRepository.markCompleted();
+            }
+            return progress;
+        }
+        long toClickId = Math.min(targetClickId, lastClickId + chunkSize);
+        List<ConvertedClick> converted = new ArrayList<>();
+        clickColumnBackfillRepository.forEachClick(lastClickId, toClickId, rs -> {
+            // Unparsable addresses and referers without a host stay NULL, as they would for a new click
+            byte[] ipBytes = rs.getBytes(4);
+            if (ipBytes == null) {
+                ipBytes = IpAddresses.toBytes(rs.getString(3), ipv4PrefixLength, ipv6PrefixLength);
+            }
+            String referer = rs.getString(7);
+            Integer refererId = idFor(rs.getObject(5, Integer.class), Dimension.REFERER, truncate(referer, MAX_REFERER_LENGTH));
+            Integer refererHostId = rs.getObject(6, Integer.class);
+            if (refererHostId == null && referer != null) {
+                refererHostId = dimensionDictionary.idFor(Dimension.REFERER_HOST,
+                        truncate(refererNormalizer.host(referer), MAX_REFERER_LENGTH));
+            }
+            converted.add(new ConvertedClick(rs.getLong(1), rs.getTimestamp(2), ipBytes, refererHostId, refererId,
+                    idFor(rs.getObject(8, Integer.class), Dimension.USER_AGENT, truncate(rs.getString(9), MAX_USER_AGENT_LENGTH)),
+                    idFor(rs.getObject(10, Integer.class), Dimension.DEVICE_TYPE, rs.getString(11)),
+                    idFor(rs.getObject(12, Integer.class), Dimension.BROWSER, rs.getString(13)),
+                    idFor(rs.getObject(14, Integer.class), Dimension.OS, rs.getString(15))));
+        });
+        clickColumnBackfillRepository.updateClicks(converted);
+        clickColumnBackfillRepository.updateBackfillProgress(toClickId);
+        log.info("Converted columns of clicks {} to {} of {}", lastClickId + 1, toClickId, targetClickId);
+        if (toClickId >= targetClickId) {
+            clickColumnBackfillRepository.markCompleted();
+        }
+        return new Progress(toClickId, targetClickId, null, false);
+    }
+
+    // The click's id when it already has one, as clicks written since the id columns exist do
+    private Integer idFor(Integer id, Dimension dimension, String value) {
+        return id != null ? id : dimensionDictionary.idFor(dimension, value);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+}
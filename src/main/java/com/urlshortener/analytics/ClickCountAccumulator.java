@@ -0,0 +1,129 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.repository.UrlRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates click_count increments in striped per-url counters and writes them to urls as one
+ * batched UPDATE every few seconds, so hot links don't serialize on a row lock per click.
+ */
+@Slf4j
+@Component
+public class ClickCountAccumulator {
+
+    private final UrlRepository urlRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<Long, PendingCount> pending = new ConcurrentHashMap<>();
+    private final Counter flushedClicks;
+    private final Counter failedFlushes;
+
+    // Counters unlinked from the map last flush; a writer may still have been holding one
+    private List<Map.Entry<Long, PendingCount>> retired = new ArrayList<>();
+
+    public ClickCountAccumulator(UrlRepository urlRepository, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.urlRepository = urlRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("clicks.count.pending.urls", pending, Map::size)
+                .description("URLs with click_count increments not yet written")
+                .register(meterRegistry);
+        this.flushedClicks = Counter.builder("clicks.count.flushed")
+                .description("Click count increments written to urls")
+                .register(meterRegistry);
+        this.failedFlushes = Counter.builder("clicks.count.flush.failures")
+                .description("Click count flushes that failed and will be retried")
+                .register(meterRegistry);
+    }
+
+    public void add(long urlId, long clicks) {
+        pending.computeIfAbsent(urlId, id -> new PendingCount()).total.add(clicks);
+    }
+
+    // Clicks recorded for the url but not yet reflected in urls.click_count
+    public long pendingClicks(Long urlId) {
+        PendingCount count = pending.get(urlId);
+        return count != null ? count.unflushed() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.click-count.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        for (Map.Entry<Long, PendingCount> entry : retired) {
+            long residual = entry.getValue().unflushed();
+            if (residual > 0) {
+                add(entry.getKey(), residual);
+                entry.getValue().flushed += residual;
+            }
+        }
+        retired = new ArrayList<>();
+
+        Map<Long, Long> deltas = new HashMap<>();
+        Map<Long, PendingCount> counters = new HashMap<>();
+        for (Map.Entry<Long, PendingCount> entry : pending.entrySet()) {
+            PendingCount count = entry.getValue();
+            long delta = count.unflushed();
+            if (delta > 0) {
+                deltas.put(entry.getKey(), delta);
+                counters.put(entry.getKey(), count);
+            } else if (pending.remove(entry.getKey(), count)) {
+                retired.add(entry);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            // One transaction for every chunk, so a failure leaves none of them applied
+            transactionTemplate.executeWithoutResult(status -> urlRepository.incrementClickCounts(deltas));
+        } catch (Exception e) {
+            // Nothing is marked flushed, so the same deltas are retried on the next run
+            failedFlushes.increment();
+            log.error("Failed to flush click counts for {} URLs", deltas.size(), e);
+            return;
+        }
+
+        long total = 0;
+        for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+            counters.get(delta.getKey()).flushed += delta.getValue();
+            total += delta.getValue();
+        }
+        flushedClicks.increment(total);
+        log.debug("Flushed {} click count increments across {} URLs", total, deltas.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        // Pick up anything that landed on counters retired by the final flush
+        flush();
+        long unflushed = pending.values().stream().mapToLong(PendingCount::unflushed).sum();
+        if (unflushed > 0) {
+            log.warn("Shutting down with {} click count increments not written", unflushed);
+        }
+    }
+
+    private static final class PendingCount {
+        private final LongAdder total = new LongAdder();
+        // Only written by the flushing thread, under the accumulator lock
+        private volatile long flushed;
+
+        private long unflushed() {
+            return total.sum() - flushed;
+        }
+    }
+}
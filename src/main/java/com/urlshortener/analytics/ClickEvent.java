@@ -0,0 +1,24 @@
+package com.urlshortener.analytics;
+
+import java.time.LocalDateTime;
+
+// Everything needed to record a click, captured on the request thread so recording needs no url lookup.
+// weight is the number of real clicks this event stands for when load shedding samples clicks;
+// logSequence is the event's slot in the local click log, or NOT_LOGGED.
+public record ClickEvent(long urlId, LocalDateTime clickedAt, String ipAddress, String userAgent, String referer,
+                         int weight, long logSequence) {
+
+    public static final long NOT_LOGGED = -1;
+
+    public ClickEvent(long urlId, LocalDateTime clickedAt, String ipAddress, String userAgent, String referer) {
+        this(urlId, clickedAt, ipAddress, userAgent, referer, 1, NOT_LOGGED);
+    }
+
+    public ClickEvent withWeight(int weight) {
+        return new ClickEvent(urlId, clickedAt, ipAddress, userAgent, referer, weight, logSequence);
+    }
+
+    public ClickEvent withLogSequence(long logSequence) {
+        return new ClickEvent(urlId, clickedAt, ipAddress, userAgent, referer, weight, logSequence);
+    }
+}
@@ -0,0 +1,344 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.service.AnalyticsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers click events in a bounded in-memory queue and writes them in batches from a small
+ * pool of writer threads. A batch is flushed when it reaches the batch size or when the flush
+ * interval has passed since its first event, whichever comes first.
+ *
+ * <p>Once the queue passes the high watermark the overload policy applies until it drains below
+ * the low watermark. Sampling keeps one click in N with weight N, so summed counts stay unbiased.
+ *
+ * <p>When the click log is enabled every admitted click is appended to it before being queued and
+ * acknowledged once written. Clicks the queue cannot take, and clicks from failed batches, stay in
+ * the log and are shipped by the relay instead of being lost.
+ */
+@Slf4j
+@Component
+public class ClickIngestionPipeline implements SmartLifecycle {
+
+    // Stop after the web server has stopped accepting requests so in-flight clicks are still drained
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final AnalyticsService analyticsService;
+    private final ClickLog clickLog;
+    private final BlockingQueue<ClickEvent> queue;
+    private final OverloadPolicy overloadPolicy;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final int sampleOneIn;
+    private final int writerThreads;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+    private final Counter acceptedClicks;
+    private final Counter deferredClicks;
+    private final Counter relayedClicks;
+    private final Counter droppedFull;
+    private final Counter droppedNewest;
+    private final Counter droppedOldest;
+    private final Counter sampledKept;
+    private final Counter sampledSkipped;
+    private final Counter writtenClicks;
+    private final Counter failedClicks;
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+    private final List<Thread> writers = new ArrayList<>();
+
+    private volatile boolean running;
+    private volatile boolean shedding;
+
+    public ClickIngestionPipeline(AnalyticsService analyticsService,
+                                  ClickLog clickLog,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.analytics.ingest.queue-capacity:65536}") int queueCapacity,
+                                  @Value("${app.analytics.ingest.writer-threads:2}") int writerThreads,
+                                  @Value("${app.analytics.ingest.batch-size:500}") int batchSize,
+                                  @Value("${app.analytics.ingest.flush-interval:1s}") Duration flushInterval,
+                                  @Value("${app.analytics.ingest.shutdown-timeout:20s}") Duration shutdownTimeout,
+                                  @Value("${app.analytics.ingest.overload.policy:SAMPLE}") OverloadPolicy overloadPolicy,
+                                  @Value("${app.analytics.ingest.overload.high-watermark:0.8}") double highWatermark,
+                                  @Value("${app.analytics.ingest.overload.low-watermark:0.5}") double lowWatermark,
+                                  @Value("${app.analytics.ingest.overload.sample-one-in:10}") int sampleOneIn) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Overload low watermark must not exceed the high watermark");
+        }
+        this.analyticsService = analyticsService;
+        this.clickLog = clickLog;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overloadPolicy = overloadPolicy;
+        this.highWatermark = (int) (queueCapacity * highWatermark);
+        this.lowWatermark = (int) (queueCapacity * lowWatermark);
+        this.sampleOneIn = Math.max(1, sampleOneIn);
+        this.writerThreads = writerThreads;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+
+        Gauge.builder("clicks.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Click events waiting to be written")
+                .register(meterRegistry);
+        this.acceptedClicks = Counter.builder("clicks.ingest.accepted")
+                .description("Click events accepted into the ingest queue")
+                .register(meterRegistry);
+        this.deferredClicks = Counter.builder("clicks.ingest.deferred")
+                .description("Logged click events left for the click log relay because the queue was full")
+                .register(meterRegistry);
+        this.relayedClicks = Counter.builder("clicks.ingest.relayed")
+                .description("Click events shipped from the click log by the relay")
+                .register(meterRegistry);
+        this.droppedFull = droppedCounter(meterRegistry, "queue_full");
+        this.droppedNewest = droppedCounter(meterRegistry, "drop_newest");
+        this.droppedOldest = droppedCounter(meterRegistry, "drop_oldest");
+        this.sampledKept = Counter.builder("clicks.ingest.sampled")
+                .description("Click events seen by the sampling overload policy")
+                .tag("outcome", "kept")
+                .register(meterRegistry);
+        this.sampledSkipped = Counter.builder("clicks.ingest.sampled")
+                .description("Click events seen by the sampling overload policy")
+                .tag("outcome", "skipped")
+                .register(meterRegistry);
+        Gauge.builder("clicks.ingest.shedding", this, pipeline -> pipeline.shedding ? 1 : 0)
+                .description("Whether the click overload policy is currently active")
+                .register(meterRegistry);
+        this.writtenClicks = Counter.builder("clicks.ingest.written")
+                .description("Click events written to click_analytics")
+                .register(meterRegistry);
+        this.failedClicks = Counter.builder("clicks.ingest.failed")
+                .description("Click events in batch writes that failed")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("clicks.ingest.batch.size")
+                .description("Click events per written batch")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("clicks.ingest.flush.latency")
+                .description("Time taken to write one batch of click events")
+                .register(meterRegistry);
+    }
+
+    // Never blocks or throws on the request thread, whatever state the writers are in
+    public boolean submit(ClickEvent event) {
+        try {
+            ClickEvent admitted = applyOverloadPolicy(event);
+            if (admitted == null) {
+                return false;
+            }
+            long logSequence = clickLog.append(admitted);
+            if (logSequence != ClickEvent.NOT_LOGGED) {
+                admitted = admitted.withLogSequence(logSequence);
+            }
+            if (queue.offer(admitted)) {
+                acceptedClicks.increment();
+                return true;
+            }
+            if (logSequence != ClickEvent.NOT_LOGGED) {
+                clickLog.release(logSequence);
+                deferredClicks.increment();
+                return true;
+            }
+            droppedFull.increment();
+        } catch (RuntimeException e) {
+            log.warn("Dropping click event for URL id {}: {}", event.urlId(), e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < writerThreads; i++) {
+            Thread writer = new Thread(this::runWriter, "click-writer-" + i);
+            writer.start();
+            writers.add(writer);
+        }
+        log.info("Click ingestion started with {} writer(s), batch size {}, flush interval {}",
+                writerThreads, batchSize, flushInterval);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        for (Thread writer : writers) {
+            try {
+                writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        writers.clear();
+        if (!queue.isEmpty()) {
+            log.warn("Click ingestion stopped with {} unwritten click events", queue.size());
+        } else {
+            log.info("Click ingestion stopped and drained");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private ClickEvent applyOverloadPolicy(ClickEvent event) {
+        int depth = queue.size();
+        if (shedding && depth <= lowWatermark) {
+            shedding = false;
+            log.info("Click queue drained to {}, overload policy {} disengaged", depth, overloadPolicy);
+        } else if (!shedding && depth >= highWatermark) {
+            shedding = true;
+            log.warn("Click queue depth {} reached high watermark, applying overload policy {}", depth, overloadPolicy);
+        }
+        if (!shedding) {
+            return event;
+        }
+
+        switch (overloadPolicy) {
+            case DROP_NEWEST -> {
+                droppedNewest.increment();
+                return null;
+            }
+            case DROP_OLDEST -> {
+                ClickEvent evicted = queue.poll();
+                if (evicted != null) {
+                    clickLog.acknowledge(evicted.logSequence());
+                    droppedOldest.increment();
+                }
+                return event;
+            }
+            case SAMPLE -> {
+                if (ThreadLocalRandom.current().nextInt(sampleOneIn) != 0) {
+                    sampledSkipped.increment();
+                    return null;
+                }
+                sampledKept.increment();
+                return event.withWeight(event.weight() * sampleOneIn);
+            }
+            default -> {
+                return event;
+            }
+        }
+    }
+
+    private static Counter droppedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("clicks.ingest.dropped")
+                .description("Click events dropped before being written")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private void runWriter() {
+        List<ClickEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<ClickEvent> batch) throws InterruptedException {
+        ClickEvent first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            ClickEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<ClickEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            analyticsService.recordClicks(batch);
+            acknowledge(batch);
+            writtenClicks.increment(batch.size());
+            batchSizes.record(batch.size());
+        } catch (Exception e) {
+            release(batch);
+            failedClicks.increment(batch.size());
+            log.error("Failed to write batch of {} click events", batch.size(), e);
+        } finally {
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Ships logged clicks that were deferred, failed to write, or were recovered from a previous run;
+    // clicks still queued or in a writer's batch are held by it and never shipped twice
+    @Scheduled(fixedDelayString = "${app.analytics.wal.relay-interval-ms:10000}")
+    public void relayUnshippedClicks() {
+        if (!clickLog.isEnabled()) {
+            return;
+        }
+        List<ClickEvent> batch;
+        while (!(batch = clickLog.claimUnshipped(batchSize)).isEmpty()) {
+            try {
+                analyticsService.recordClicks(batch);
+            } catch (Exception e) {
+                release(batch);
+                log.error("Failed to relay {} logged click events, will retry", batch.size(), e);
+                return;
+            }
+            acknowledge(batch);
+            relayedClicks.increment(batch.size());
+        }
+    }
+
+    private void acknowledge(List<ClickEvent> events) {
+        for (ClickEvent event : events) {
+            clickLog.acknowledge(event.logSequence());
+        }
+    }
+
+    private void release(List<ClickEvent> events) {
+        for (ClickEvent event : events) {
+            clickLog.release(event.logSequence());
+        }
+    }
+
+    public enum OverloadPolicy {
+        DROP_NEWEST, DROP_OLDEST, SAMPLE
+    }
+}
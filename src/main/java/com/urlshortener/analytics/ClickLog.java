@@ -0,0 +1,507 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash-safe local write-ahead log for click events. Each click is appended as a fixed-size
+ * binary record to a memory-mapped segment file before it is queued for writing, and segments
+ * are deleted once every record in them has been acknowledged as written to click_analytics.
+ *
+ * <p>Appends write straight into the mapped buffer with absolute puts, so the request thread
+ * allocates nothing. A record only counts once its trailing commit marker is written, which
+ * makes torn writes from a crash invisible on recovery. Segments left over from a previous run
+ * are recovered at startup and shipped by the relay; acknowledgements are not persisted, so a
+ * crash can replay clicks that were already written (at-least-once delivery).
+ *
+ * <p>An appended record counts as handed to a writer until it is acknowledged or released, and
+ * the relay only ships records nobody holds: released ones, and all records of recovered
+ * segments. Segment files are created, mapped and pre-faulted one segment ahead on a background
+ * thread, which also syncs and seals full segments, so rotating costs the request thread no I/O.
+ * Appends never wait for an fsync either: syncs force the mapping outside the append lock, on
+ * the scheduler thread for INTERVAL and on the background thread for BATCH.
+ */
+@Slf4j
+@Component
+public class ClickLog {
+
+    static final int RECORD_SIZE = 2048;
+
+    private static final int URL_ID_OFFSET = 0;
+    private static final int CLICKED_AT_SECONDS_OFFSET = 8;
+    private static final int CLICKED_AT_NANOS_OFFSET = 16;
+    private static final int WEIGHT_OFFSET = 20;
+    private static final int IP_LENGTH_OFFSET = 24;
+    private static final int USER_AGENT_LENGTH_OFFSET = 26;
+    private static final int REFERER_LENGTH_OFFSET = 28;
+    private static final int IP_OFFSET = 32;
+    private static final int IP_CAPACITY = 48;
+    private static final int USER_AGENT_OFFSET = IP_OFFSET + IP_CAPACITY;
+    private static final int USER_AGENT_CAPACITY = 512;
+    private static final int REFERER_OFFSET = USER_AGENT_OFFSET + USER_AGENT_CAPACITY;
+    private static final int COMMIT_OFFSET = RECORD_SIZE - 4;
+    private static final int REFERER_CAPACITY = COMMIT_OFFSET - REFERER_OFFSET;
+    private static final int COMMIT_MARKER = 0x434C4B31;
+    private static final short NULL_LENGTH = -1;
+
+    private static final String SEGMENT_PREFIX = "clicks-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int PAGE_SIZE = 4096;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final FsyncPolicy fsyncPolicy;
+    private final int fsyncBatchSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Counter appendedRecords;
+    private final Counter appendFailures;
+
+    private final ExecutorService allocator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "click-log-allocator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Segment active;
+    private Future<Segment> preallocated;
+    private long nextIndex;
+    private int appendsSinceSync;
+    private boolean syncQueued;
+
+    public ClickLog(MeterRegistry meterRegistry,
+                    @Value("${app.analytics.wal.enabled:false}") boolean enabled,
+                    @Value("${app.analytics.wal.directory:data/click-log}") String directory,
+                    @Value("${app.analytics.wal.records-per-segment:16384}") int recordsPerSegment,
+                    @Value("${app.analytics.wal.fsync:INTERVAL}") FsyncPolicy fsyncPolicy,
+                    @Value("${app.analytics.wal.fsync-batch-size:256}") int fsyncBatchSize) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = Math.max(1, fsyncBatchSize);
+
+        this.appendedRecords = Counter.builder("clicks.wal.appended")
+                .description("Click records appended to the local click log")
+                .register(meterRegistry);
+        this.appendFailures = Counter.builder("clicks.wal.append.failures")
+                .description("Click records that could not be appended to the local click log")
+                .register(meterRegistry);
+        Gauge.builder("clicks.wal.segments", segments, ConcurrentSkipListMap::size)
+                .description("Click log segments on disk")
+                .register(meterRegistry);
+        Gauge.builder("clicks.wal.unacknowledged", this, ClickLog::unacknowledgedRecords)
+                .description("Logged clicks not yet acknowledged as written")
+                .register(meterRegistry);
+
+        if (enabled) {
+            recoverSegments();
+            nextIndex = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+            preallocate();
+            log.info("Click log enabled in {} ({} records per segment, fsync {}), recovered {} segment(s)",
+                    this.directory.toAbsolutePath(), recordsPerSegment, fsyncPolicy, segments.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns the record's sequence number, or ClickEvent.NOT_LOGGED if the log is disabled or unwritable.
+    // The record is held by the caller until it acknowledges or releases it.
+    public synchronized long append(ClickEvent event) {
+        if (!enabled) {
+            return ClickEvent.NOT_LOGGED;
+        }
+        try {
+            if (active == null || active.appended == recordsPerSegment) {
+                rotate();
+            }
+            Segment segment = active;
+            int slot = segment.appended;
+            writeRecord(segment.buffer, slot * RECORD_SIZE, event);
+            synchronized (segment) {
+                segment.handedOff.set(slot);
+            }
+            segment.appended++;
+            appendedRecords.increment();
+
+            if (fsyncPolicy == FsyncPolicy.BATCH && ++appendsSinceSync >= fsyncBatchSize && !syncQueued) {
+                syncQueued = true;
+                appendsSinceSync = 0;
+                allocator.execute(() -> batchSync(segment));
+            }
+            return segment.index * recordsPerSegment + slot;
+        } catch (IOException | UncheckedIOException e) {
+            appendFailures.increment();
+            log.warn("Failed to append click to local log: {}", e.getMessage());
+            return ClickEvent.NOT_LOGGED;
+        }
+    }
+
+    public void acknowledge(long sequence) {
+        if (sequence < 0) {
+            return;
+        }
+        Segment segment = segments.get(sequence / recordsPerSegment);
+        if (segment == null) {
+            return;
+        }
+        boolean complete;
+        synchronized (segment) {
+            int slot = (int) (sequence % recordsPerSegment);
+            if (segment.acknowledged.get(slot)) {
+                return;
+            }
+            segment.acknowledged.set(slot);
+            segment.acknowledgedCount++;
+            complete = segment.sealed && segment.acknowledgedCount >= segment.committed;
+        }
+        if (complete) {
+            delete(segment);
+        }
+    }
+
+    // Gives a held record back to the relay, for clicks the queue could not take or whose write failed
+    public void release(long sequence) {
+        if (sequence < 0) {
+            return;
+        }
+        Segment segment = segments.get(sequence / recordsPerSegment);
+        if (segment == null) {
+            return;
+        }
+        synchronized (segment) {
+            segment.handedOff.clear((int) (sequence % recordsPerSegment));
+        }
+    }
+
+    // Committed records that are neither acknowledged nor held; the returned records are held by the caller
+    public List<ClickEvent> claimUnshipped(int maxRecords) {
+        List<ClickEvent> events = new ArrayList<>();
+        if (!enabled) {
+            return events;
+        }
+        Map<Segment, Integer> appendedSnapshot = new LinkedHashMap<>();
+        // Taking the append lock makes every record below the snapshot visible to this thread
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                appendedSnapshot.put(segment, segment.appended);
+            }
+        }
+        for (Map.Entry<Segment, Integer> entry : appendedSnapshot.entrySet()) {
+            Segment segment = entry.getKey();
+            int appended = entry.getValue();
+            synchronized (segment) {
+                for (int slot = segment.acknowledged.nextClearBit(0);
+                     slot < appended && events.size() < maxRecords;
+                     slot = segment.acknowledged.nextClearBit(slot + 1)) {
+                    if (segment.handedOff.get(slot)) {
+                        continue;
+                    }
+                    ClickEvent event = readRecord(segment.buffer, slot * RECORD_SIZE);
+                    if (event != null) {
+                        segment.handedOff.set(slot);
+                        events.add(event.withLogSequence(segment.index * recordsPerSegment + slot));
+                    }
+                }
+            }
+            if (events.size() >= maxRecords) {
+                break;
+            }
+        }
+        return events;
+    }
+
+    // Forces the active segment without holding the append lock, so appends go on during the fsync
+    @Scheduled(fixedDelayString = "${app.analytics.wal.fsync-interval-ms:1000}")
+    public void sync() {
+        if (!enabled || fsyncPolicy != FsyncPolicy.INTERVAL) {
+            return;
+        }
+        Segment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        Segment last;
+        Future<Segment> unused;
+        synchronized (this) {
+            last = active;
+            active = null;
+            unused = preallocated;
+            preallocated = null;
+        }
+        if (last != null) {
+            last.buffer.force();
+            seal(last);
+        }
+        allocator.shutdown();
+        try {
+            if (!allocator.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Click log allocator did not finish syncing segments before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // An empty file would be deleted on recovery anyway
+        Segment segment = unused != null && unused.isDone() ? awaitSegment(unused) : null;
+        if (segment != null) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Failed to delete unused click log segment {}: {}", segment.path, e.getMessage());
+            }
+        }
+    }
+
+    // The full segment is synced and sealed in the background; its records stay readable meanwhile
+    private void rotate() throws IOException {
+        if (active != null) {
+            Segment full = active;
+            active = null;
+            allocator.execute(() -> {
+                full.buffer.force();
+                seal(full);
+            });
+        }
+        Segment segment = preallocated != null ? awaitSegment(preallocated) : null;
+        preallocated = null;
+        if (segment == null) {
+            segment = createSegment(nextIndex);
+        }
+        nextIndex = segment.index + 1;
+        segments.put(segment.index, segment);
+        active = segment;
+        appendsSinceSync = 0;
+        preallocate();
+    }
+
+    // Appends made during the force queue the next batch sync instead of waiting for this one
+    private void batchSync(Segment segment) {
+        synchronized (this) {
+            syncQueued = false;
+        }
+        segment.buffer.force();
+    }
+
+    private void preallocate() {
+        long index = nextIndex;
+        preallocated = allocator.submit(() -> createSegment(index));
+    }
+
+    // Null if preallocation failed, in which case rotate creates the segment itself
+    private Segment awaitSegment(Future<Segment> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            log.warn("Failed to preallocate click log segment: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // Indexes from nextIndex on belong to no recovered segment, so a leftover file there is overwritten
+    private Segment createSegment(long index) throws IOException {
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+            // Fault every page in now rather than on the first append into it
+            for (int offset = 0; offset < buffer.capacity(); offset += PAGE_SIZE) {
+                buffer.put(offset, (byte) 0);
+            }
+            return new Segment(index, path, buffer, recordsPerSegment);
+        }
+    }
+
+    private void seal(Segment segment) {
+        boolean complete;
+        synchronized (segment) {
+            segment.committed = segment.appended;
+            segment.sealed = true;
+            complete = segment.acknowledgedCount >= segment.committed;
+        }
+        if (complete) {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        if (segments.remove(segment.index, segment)) {
+            try {
+                Files.deleteIfExists(segment.path);
+                log.debug("Deleted fully acknowledged click log segment {}", segment.path.getFileName());
+            } catch (IOException e) {
+                log.warn("Failed to delete click log segment {}: {}", segment.path, e.getMessage());
+            }
+        }
+    }
+
+    private void recoverSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : files) {
+                recoverSegment(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read click log directory " + directory, e);
+        }
+    }
+
+    private void recoverSegment(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long index = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int slots = (int) Math.min(recordsPerSegment, channel.size() / RECORD_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * RECORD_SIZE);
+            Segment segment = new Segment(index, path, buffer, recordsPerSegment);
+            int committed = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                if (buffer.getInt(slot * RECORD_SIZE + COMMIT_OFFSET) == COMMIT_MARKER) {
+                    committed++;
+                } else {
+                    // Torn or never-written slots are skipped by the relay
+                    segment.acknowledged.set(slot);
+                }
+            }
+            segment.appended = slots;
+            segment.committed = slots;
+            segment.acknowledgedCount = slots - committed;
+            segment.sealed = true;
+            segments.put(index, segment);
+            if (committed == 0) {
+                delete(segment);
+            } else {
+                log.info("Recovered {} unshipped click(s) from {}", committed, name);
+            }
+        }
+    }
+
+    private long unacknowledgedRecords() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            synchronized (segment) {
+                total += segment.appended - segment.acknowledgedCount;
+            }
+        }
+        return total;
+    }
+
+    private static void writeRecord(MappedByteBuffer buffer, int base, ClickEvent event) {
+        LocalDateTime clickedAt = event.clickedAt();
+        buffer.putLong(base + URL_ID_OFFSET, event.urlId());
+        buffer.putLong(base + CLICKED_AT_SECONDS_OFFSET, clickedAt.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(base + CLICKED_AT_NANOS_OFFSET, clickedAt.getNano());
+        buffer.putInt(base + WEIGHT_OFFSET, event.weight());
+        putString(buffer, base, IP_LENGTH_OFFSET, IP_OFFSET, IP_CAPACITY, event.ipAddress());
+        putString(buffer, base, USER_AGENT_LENGTH_OFFSET, USER_AGENT_OFFSET, USER_AGENT_CAPACITY, event.userAgent());
+        putString(buffer, base, REFERER_LENGTH_OFFSET, REFERER_OFFSET, REFERER_CAPACITY, event.referer());
+        buffer.putInt(base + COMMIT_OFFSET, COMMIT_MARKER);
+    }
+
+    // Header values arrive as ISO-8859-1, so one byte per char is lossless for them
+    private static void putString(MappedByteBuffer buffer, int base, int lengthOffset, int dataOffset,
+                                  int capacity, String value) {
+        if (value == null) {
+            buffer.putShort(base + lengthOffset, NULL_LENGTH);
+            return;
+        }
+        int length = Math.min(value.length(), capacity);
+        buffer.putShort(base + lengthOffset, (short) length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            buffer.put(base + dataOffset + i, c < 256 ? (byte) c : (byte) '?');
+        }
+    }
+
+    private static ClickEvent readRecord(MappedByteBuffer buffer, int base) {
+        if (buffer.getInt(base + COMMIT_OFFSET) != COMMIT_MARKER) {
+            return null;
+        }
+        LocalDateTime clickedAt = LocalDateTime.ofEpochSecond(
+                buffer.getLong(base + CLICKED_AT_SECONDS_OFFSET), buffer.getInt(base + CLICKED_AT_NANOS_OFFSET), ZoneOffset.UTC);
+        return new ClickEvent(
+                buffer.getLong(base + URL_ID_OFFSET),
+                clickedAt,
+                getString(buffer, base, IP_LENGTH_OFFSET, IP_OFFSET),
+                getString(buffer, base, USER_AGENT_LENGTH_OFFSET, USER_AGENT_OFFSET),
+                getString(buffer, base, REFERER_LENGTH_OFFSET, REFERER_OFFSET),
+                buffer.getInt(base + WEIGHT_OFFSET),
+                ClickEvent.NOT_LOGGED);
+    }
+
+    private static String getString(MappedByteBuffer buffer, int base, int lengthOffset, int dataOffset) {
+        short length = buffer.getShort(base + lengthOffset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(base + dataOffset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static final class Segment {
+        private final long index;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final BitSet acknowledged;
+        private final BitSet handedOff;
+        private int appended;
+        private int committed;
+        private int acknowledgedCount;
+        private boolean sealed;
+
+        private Segment(long index, Path path, MappedByteBuffer buffer, int capacity) {
+            this.index = index;
+            this.path = path;
+            this.buffer = buffer;
+            this.acknowledged = new BitSet(capacity);
+            this.handedOff = new BitSet(capacity);
+        }
+    }
+
+    public enum FsyncPolicy {
+        BATCH, INTERVAL
+    }
+}
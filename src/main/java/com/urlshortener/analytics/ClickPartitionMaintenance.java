@@ -0,0 +1,107 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.repository.ClickPartitionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps monthly click_analytics partitions created ahead of time and applies retention by
+ * detaching or dropping whole partitions, which is far cheaper than deleting rows. Clicks outside
+ * every month land in the default partition and are moved to a partition of their own on the next
+ * run. Rollups and visitor sketches are separate tables and outlive the raw clicks.
+ */
+@Slf4j
+@Component
+public class ClickPartitionMaintenance {
+
+    private final ClickPartitionRepository clickPartitionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final RetentionAction retentionAction;
+
+    public ClickPartitionMaintenance(ClickPartitionRepository clickPartitionRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${app.analytics.partitions.enabled:true}") boolean enabled,
+                                     @Value("${app.analytics.partitions.months-ahead:3}") int monthsAhead,
+                                     @Value("${app.analytics.partitions.retention-months:0}") int retentionMonths,
+                                     @Value("${app.analytics.partitions.retention-action:DETACH}") RetentionAction retentionAction) {
+        this.clickPartitionRepository = clickPartitionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.retentionAction = retentionAction;
+    }
+
+    // Runs at startup and then periodically; only one instance at a time does the work
+    @Scheduled(fixedDelayString = "${app.analytics.partitions.check-interval-ms:21600000}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (clickPartitionRepository.tryLockMaintenance()) {
+                    maintain(YearMonth.now());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Click partition maintenance failed, will retry", e);
+        }
+    }
+
+    private void maintain(YearMonth currentMonth) {
+        List<YearMonth> existing = new ArrayList<>(clickPartitionRepository.findPartitionMonths());
+        YearMonth oldestKept = retentionMonths > 0 ? currentMonth.minusMonths(retentionMonths) : null;
+        // Clicks that landed in the default partition move to their month's partition, unless that month has expired
+        for (YearMonth month : clickPartitionRepository.findDefaultPartitionMonths()) {
+            if (oldestKept != null && month.isBefore(oldestKept)) {
+                int deleted = clickPartitionRepository.deleteFromDefault(month);
+                log.warn("Deleted {} clicks of expired month {} from the default click partition", deleted, month);
+            } else {
+                int moved = clickPartitionRepository.createPartitionFromDefault(month);
+                existing.add(month);
+                log.warn("Created click partition {} with {} clicks from the default partition",
+                        ClickPartitionRepository.partitionName(month), moved);
+            }
+        }
+
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = currentMonth.plusMonths(i);
+            if (!existing.contains(month)) {
+                clickPartitionRepository.createPartition(month);
+                log.info("Created click partition {}", ClickPartitionRepository.partitionName(month));
+            }
+        }
+
+        if (oldestKept == null) {
+            return;
+        }
+        // A partition goes once all of its month is older than the retention period
+        for (YearMonth month : existing) {
+            if (month.isBefore(oldestKept)) {
+                if (retentionAction == RetentionAction.DROP) {
+                    clickPartitionRepository.dropPartition(month);
+                } else {
+                    clickPartitionRepository.detachPartition(month);
+                }
+                log.info("Applied retention to click partition {} ({})",
+                        ClickPartitionRepository.partitionName(month), retentionAction);
+            }
+        }
+    }
+
+    public enum RetentionAction {
+        DETACH, DROP
+    }
+}
@@ -0,0 +1,129 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.entity.ClickDimension.Dimension;
+import com.urlshortener.repository.ClickAnalyticsRow;
+import com.urlshortener.repository.ClickRollupRepository;
+import com.urlshortener.repository.ClickRollupRepository.Key;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains hourly and daily click rollups per url, which ClickSummaryRepository reads analytics
+ * from. Hourly rollups hold totals only and answer the sliding windows; daily rollups also hold a
+ * row per dimension value for the breakdowns.
+ *
+ * <p>Rollups are written in the same transaction as the click rows, so they never disagree.
+ * Clicks written before rollups existed are rolled up by the backfill job, and reads fall back
+ * to raw click queries until it has finished.
+ */
+@Slf4j
+@Component
+public class ClickRollups {
+
+    private static final Dimension[] DAILY_DIMENSIONS = {
+            Dimension.DEVICE_TYPE, Dimension.BROWSER, Dimension.OS, Dimension.REFERER_HOST, Dimension.COUNTRY
+    };
+
+    private final ClickRollupRepository clickRollupRepository;
+    private final ClickColumnBackfill clickColumnBackfill;
+    private final DimensionDictionary dimensionDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int backfillChunkSize;
+
+    private volatile boolean ready;
+
+    public ClickRollups(ClickRollupRepository clickRollupRepository,
+                        ClickColumnBackfill clickColumnBackfill,
+                        DimensionDictionary dimensionDictionary,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${app.analytics.rollups.enabled:true}") boolean enabled,
+                        @Value("${app.analytics.rollups.backfill.chunk-size:50000}") int backfillChunkSize) {
+        this.clickRollupRepository = clickRollupRepository;
+        this.clickColumnBackfill = clickColumnBackfill;
+        this.dimensionDictionary = dimensionDictionary;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Called inside the transaction that inserts the click rows
+    public void record(List<ClickAnalyticsRow> rows) {
+        if (!enabled) {
+            return;
+        }
+        Map<Key, Long> hourly = new HashMap<>();
+        Map<Key, Long> daily = new HashMap<>();
+        for (ClickAnalyticsRow row : rows) {
+            LocalDateTime hour = row.clickedAt().truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime day = row.clickedAt().truncatedTo(ChronoUnit.DAYS);
+            long weight = row.weight();
+            hourly.merge(new Key(row.urlId(), ClickRollupRepository.TOTAL, hour, 0), weight, Long::sum);
+            daily.merge(new Key(row.urlId(), ClickRollupRepository.TOTAL, day, 0), weight, Long::sum);
+            for (Dimension dimension : DAILY_DIMENSIONS) {
+                daily.merge(new Key(row.urlId(), dimension.name(), day, valueId(row, dimension)), weight, Long::sum);
+            }
+            if (row.bot()) {
+                daily.merge(new Key(row.urlId(), ClickRollupRepository.BOT, day, 0), weight, Long::sum);
+            }
+        }
+        clickRollupRepository.addClicks(ClickRollupRepository.HOURLY, hourly);
+        clickRollupRepository.addClicks(ClickRollupRepository.DAILY, daily);
+    }
+
+    // One chunk per run, so a long backfill never holds a scheduler thread for more than one transaction.
+    // Waits for referer_host_id to be filled in, since clicks without it would count as having no referer
+    @Scheduled(fixedDelayString = "${app.analytics.rollups.backfill.interval-ms:1000}")
+    public void backfill() {
+        if (!enabled || ready || !clickColumnBackfill.isReady()) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillChunk()))) {
+                ready = true;
+            }
+        } catch (RuntimeException e) {
+            log.error("Click rollup backfill failed, will retry", e);
+        }
+    }
+
+    // One chunk per transaction; the progress row lock keeps other instances from rolling up the same clicks
+    private boolean backfillChunk() {
+        long[] progress = clickRollupRepository.lockBackfillProgress();
+        long lastClickId = progress[0];
+        long targetClickId = progress[1];
+        if (lastClickId >= targetClickId) {
+            return true;
+        }
+        long toClickId = Math.min(targetClickId, lastClickId + backfillChunkSize);
+        clickRollupRepository.backfill(lastClickId, toClickId);
+        log.info("Rolled up clicks {} to {} of {}", lastClickId + 1, toClickId, targetClickId);
+        return toClickId >= targetClickId;
+    }
+
+    private int valueId(ClickAnalyticsRow row, Dimension dimension) {
+        Integer id = switch (dimension) {
+            case DEVICE_TYPE -> row.deviceTypeId();
+            case BROWSER -> row.browserId();
+            case OS -> row.osId();
+            case REFERER_HOST -> row.refererHostId();
+            case COUNTRY -> dimensionDictionary.idFor(Dimension.COUNTRY, row.country());
+            default -> null;
+        };
+        return id != null ? id : 0;
+    }
+}
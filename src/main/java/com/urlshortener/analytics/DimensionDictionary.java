@@ -0,0 +1,142 @@
+package com.urlshortener.analytics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.config.DedicatedDataSources;
+import com.urlshortener.entity.ClickDimension;
+import com.urlshortener.entity.ClickDimension.Dimension;
+import com.urlshortener.repository.ClickDimensionRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps click dimension values to their click_dimensions ids and back. Both directions are cached
+ * in process, so recording a click with a value seen before needs no database round trip.
+ *
+ * <p>New values are inserted and committed on a small connection pool of their own, so an id is
+ * never lost to the rollback of the click batch that first saw the value, and a writer already
+ * holding a connection of the main pool never waits for a second one from it. A concurrent insert
+ * of the same value by another writer or instance fails on the unique index, and the loser then
+ * reads the winner's id.
+ */
+@Slf4j
+@Component
+public class DimensionDictionary {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO click_dimensions (dimension, dimension_value, value_md5) VALUES (?, ?, ?)";
+
+    private final ClickDimensionRepository clickDimensionRepository;
+    private final HikariDataSource insertDataSource;
+    private final JdbcTemplate insertJdbcTemplate;
+    private final Map<Dimension, Cache<String, Integer>> ids = new EnumMap<>(Dimension.class);
+    private final Cache<Integer, String> values;
+
+    public DimensionDictionary(ClickDimensionRepository clickDimensionRepository,
+                               DataSourceProperties dataSourceProperties,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.analytics.dimensions.cache-size:50000}") long cacheSize,
+                               @Value("${app.analytics.dimensions.insert-pool-size:2}") int insertPoolSize) {
+        this.clickDimensionRepository = clickDimensionRepository;
+        this.insertDataSource = DedicatedDataSources.create(dataSourceProperties, "click-dimensions", insertPoolSize, meterRegistry);
+        this.insertJdbcTemplate = new JdbcTemplate(insertDataSource);
+
+        for (Dimension dimension : Dimension.values()) {
+            Cache<String, Integer> cache = Caffeine.newBuilder()
+                    .maximumSize(cacheSize)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "clickDimensions." + dimension.name().toLowerCase());
+            ids.put(dimension, cache);
+        }
+        this.values = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, values, "clickDimensionValues");
+    }
+
+    public Integer idFor(Dimension dimension, String value) {
+        if (value == null) {
+            return null;
+        }
+        return ids.get(dimension).get(value, v -> resolve(dimension, v));
+    }
+
+    // Values for the given ids; ids missing from the dictionary are left out
+    public Map<Integer, String> valuesFor(Collection<Integer> dimensionIds) {
+        return values.getAll(dimensionIds, missing -> {
+            Map<Integer, String> loaded = new HashMap<>();
+            for (ClickDimension row : clickDimensionRepository.findAllById(List.copyOf(missing))) {
+                loaded.put(row.getId(), row.getValue());
+            }
+            return loaded;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        insertDataSource.close();
+    }
+
+    private Integer resolve(Dimension dimension, String value) {
+        String md5 = md5(value);
+        Integer id = clickDimensionRepository.findByDimensionAndValueMd5AndValue(dimension, md5, value)
+                .map(ClickDimension::getId)
+                .orElseGet(() -> insert(dimension, value, md5));
+        values.put(id, value);
+        return id;
+    }
+
+    // Autocommit, so the row is visible to every writer as soon as this returns
+    private Integer insert(Dimension dimension, String value, String md5) {
+        try {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            insertJdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"});
+                ps.setString(1, dimension.name());
+                ps.setString(2, value);
+                ps.setString(3, md5);
+                return ps;
+            }, keyHolder);
+            Integer id = keyHolder.getKeyAs(Integer.class);
+            log.debug("Added {} value {} to click dimensions with id {}", dimension, value, id);
+            return id;
+        } catch (DuplicateKeyException e) {
+            return clickDimensionRepository.findByDimensionAndValueMd5AndValue(dimension, md5, value)
+                    .map(ClickDimension::getId)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    // Same digest as Postgres md5() over a UTF-8 database, which the migrations use
+    static String md5(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.urlshortener.analytics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Immutable IP range to location table held in sorted primitive arrays: one set of parallel
+ * arrays for IPv4 ranges and one for IPv6 ranges, each pointing into a shared array of distinct
+ * locations. Lookups are a binary search over the range starts and allocate nothing; unsigned
+ * addresses are stored with their sign bit flipped so plain signed comparisons order them.
+ */
+final class GeoIpDatabase {
+
+    static final GeoIpDatabase EMPTY = new GeoIpDatabase(new int[0], new int[0], new int[0],
+            new long[0], new long[0], new long[0], new long[0], new int[0], new GeoIpResolver.Location[0]);
+
+    private final int[] v4Starts;
+    private final int[] v4Ends;
+    private final int[] v4Locations;
+    private final long[] v6StartsHigh;
+    private final long[] v6StartsLow;
+    private final long[] v6EndsHigh;
+    private final long[] v6EndsLow;
+    private final int[] v6Locations;
+    private final GeoIpResolver.Location[] locations;
+
+    private GeoIpDatabase(int[] v4Starts, int[] v4Ends, int[] v4Locations,
+                          long[] v6StartsHigh, long[] v6StartsLow, long[] v6EndsHigh, long[] v6EndsLow, int[] v6Locations,
+                          GeoIpResolver.Location[] locations) {
+        this.v4Starts = v4Starts;
+        this.v4Ends = v4Ends;
+        this.v4Locations = v4Locations;
+        this.v6StartsHigh = v6StartsHigh;
+        this.v6StartsLow = v6StartsLow;
+        this.v6EndsHigh = v6EndsHigh;
+        this.v6EndsLow = v6EndsLow;
+        this.v6Locations = v6Locations;
+        this.locations = locations;
+    }
+
+    int rangeCount() {
+        return v4Starts.length + v6StartsHigh.length;
+    }
+
+    GeoIpResolver.Location findIpv4(int address) {
+        int key = address ^ Integer.MIN_VALUE;
+        int low = 0;
+        int high = v4Starts.length - 1;
+        // Last range starting at or before the address
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (v4Starts[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && key <= v4Ends[high] ? locations[v4Locations[high]] : null;
+    }
+
+    GeoIpResolver.Location findIpv6(long addressHigh, long addressLow) {
+        long keyHigh = addressHigh ^ Long.MIN_VALUE;
+        long keyLow = addressLow ^ Long.MIN_VALUE;
+        int low = 0;
+        int high = v6StartsHigh.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(v6StartsHigh[mid], v6StartsLow[mid], keyHigh, keyLow) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && compare(keyHigh, keyLow, v6EndsHigh[high], v6EndsLow[high]) <= 0
+                ? locations[v6Locations[high]]
+                : null;
+    }
+
+    /**
+     * Reads a CSV of (range start, range end, ...) rows with textual IPv4 or IPv6 addresses, such
+     * as the DB-IP "IP to City Lite" file, optionally gzipped. Ranges must be sorted and must not
+     * overlap, which holds for the published files.
+     */
+    static GeoIpDatabase load(Path file, int countryColumn, int cityColumn) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = open(file)) {
+            String line;
+            int lineNumber = 0;
+            IpAddresses.Parsed start = new IpAddresses.Parsed();
+            IpAddresses.Parsed end = new IpAddresses.Parsed();
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                List<String> fields = splitCsv(line);
+                if (fields.size() <= Math.max(countryColumn, cityColumn)
+                        || !IpAddresses.parse(fields.get(0), start) || !IpAddresses.parse(fields.get(1), end)) {
+                    // Tolerates a header row; anything else malformed is an error
+                    if (lineNumber == 1) {
+                        continue;
+                    }
+                    throw new IOException("Malformed GeoIP row at line " + lineNumber + " of " + file);
+                }
+                if (start.isIpv4() != end.isIpv4()) {
+                    throw new IOException("GeoIP range mixes IPv4 and IPv6 at line " + lineNumber + " of " + file);
+                }
+                builder.add(start, end, fields.get(countryColumn), fields.get(cityColumn), lineNumber);
+            }
+        }
+        return builder.build();
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file), 65536), StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int result = Long.compare(high1, high2);
+        return result != 0 ? result : Long.compare(low1, low2);
+    }
+
+    private static final class Builder {
+
+        private int[] v4Starts = new int[1024];
+        private int[] v4Ends = new int[1024];
+        private int[] v4Locations = new int[1024];
+        private int v4Size;
+        private long[] v6StartsHigh = new long[1024];
+        private long[] v6StartsLow = new long[1024];
+        private long[] v6EndsHigh = new long[1024];
+        private long[] v6EndsLow = new long[1024];
+        private int[] v6Locations = new int[1024];
+        private int v6Size;
+        private final Map<GeoIpResolver.Location, Integer> locationIds = new HashMap<>();
+        private final List<GeoIpResolver.Location> locations = new ArrayList<>();
+
+        void add(IpAddresses.Parsed start, IpAddresses.Parsed end, String country, String city, int lineNumber) throws IOException {
+            int location = locationId(country, city);
+            if (start.isIpv4()) {
+                int rangeStart = start.ipv4() ^ Integer.MIN_VALUE;
+                int rangeEnd = end.ipv4() ^ Integer.MIN_VALUE;
+                if (rangeEnd < rangeStart || (v4Size > 0 && rangeStart <= v4Ends[v4Size - 1])) {
+                    throw new IOException("GeoIP IPv4 ranges are not sorted or overlap at line " + lineNumber);
+                }
+                if (v4Size == v4Starts.length) {
+                    v4Starts = Arrays.copyOf(v4Starts, v4Size * 2);
+                    v4Ends = Arrays.copyOf(v4Ends, v4Size * 2);
+                    v4Locations = Arrays.copyOf(v4Locations, v4Size * 2);
+                }
+                v4Starts[v4Size] = rangeStart;
+                v4Ends[v4Size] = rangeEnd;
+                v4Locations[v4Size++] = location;
+                return;
+            }
+            long startHigh = start.high() ^ Long.MIN_VALUE;
+            long startLow = start.low() ^ Long.MIN_VALUE;
+            long endHigh = end.high() ^ Long.MIN_VALUE;
+            long endLow = end.low() ^ Long.MIN_VALUE;
+            if (compare(endHigh, endLow, startHigh, startLow) < 0 || (v6Size > 0
+                    && compare(startHigh, startLow, v6EndsHigh[v6Size - 1], v6EndsLow[v6Size - 1]) <= 0)) {
+                throw new IOException("GeoIP IPv6 ranges are not sorted or overlap at line " + lineNumber);
+            }
+            if (v6Size == v6StartsHigh.length) {
+                v6StartsHigh = Arrays.copyOf(v6StartsHigh, v6Size * 2);
+                v6StartsLow = Arrays.copyOf(v6StartsLow, v6Size * 2);
+                v6EndsHigh = Arrays.copyOf(v6EndsHigh, v6Size * 2);
+                v6EndsLow = Arrays.copyOf(v6EndsLow, v6Size * 2);
+                v6Locations = Arrays.copyOf(v6Locations, v6Size * 2);
+            }
+            v6StartsHigh[v6Size] = startHigh;
+            v6StartsLow[v6Size] = startLow;
+            v6EndsHigh[v6Size] = endHigh;
+            v6EndsLow[v6Size] = endLow;
+            v6Locations[v6Size++] = location;
+        }
+
+        GeoIpDatabase build() {
+            return new GeoIpDatabase(
+                    Arrays.copyOf(v4Starts, v4Size), Arrays.copyOf(v4Ends, v4Size), Arrays.copyOf(v4Locations, v4Size),
+                    Arrays.copyOf(v6StartsHigh, v6Size), Arrays.copyOf(v6StartsLow, v6Size),
+                    Arrays.copyOf(v6EndsHigh, v6Size), Arrays.copyOf(v6EndsLow, v6Size), Arrays.copyOf(v6Locations, v6Size),
+                    locations.toArray(new GeoIpResolver.Location[0]));
+        }
+
+        // Ranges share one Location per distinct (country, city), so lookups hand out existing instances
+        private int locationId(String country, String city) {
+            GeoIpResolver.Location location = GeoIpResolver.Location.of(country, city);
+            return locationIds.computeIfAbsent(location, key -> {
+                locations.add(key);
+                return locations.size() - 1;
+            });
+        }
+    }
+}
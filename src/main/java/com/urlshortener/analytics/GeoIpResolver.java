@@ -0,0 +1,140 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves client IPs to country and city from a local IP range file, loaded into a
+ * {@link GeoIpDatabase}. The file is checked for changes periodically; a new version is parsed on
+ * a dedicated loader thread, so a multi-second parse never holds up other scheduled jobs, and
+ * swapped in with a single volatile write, so ingestion never waits for a reload. A file that
+ * fails to load leaves the previous data in use.
+ */
+@Slf4j
+@Component
+public class GeoIpResolver {
+
+    private static final int MAX_CITY_LENGTH = 100;
+
+    private final Path file;
+    private final int countryColumn;
+    private final int cityColumn;
+    private final ThreadLocal<IpAddresses.Parsed> parsed = ThreadLocal.withInitial(IpAddresses.Parsed::new);
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "geoip-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    private volatile GeoIpDatabase database = GeoIpDatabase.EMPTY;
+    private volatile FileTime loadedVersion;
+
+    public GeoIpResolver(MeterRegistry meterRegistry,
+                         @Value("${app.analytics.geoip.file:}") String file,
+                         @Value("${app.analytics.geoip.country-column:3}") int countryColumn,
+                         @Value("${app.analytics.geoip.city-column:5}") int cityColumn) {
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.countryColumn = countryColumn;
+        this.cityColumn = cityColumn;
+        Gauge.builder("geoip.ranges", this, resolver -> resolver.database.rangeCount())
+                .description("IP ranges in the loaded GeoIP database")
+                .register(meterRegistry);
+    }
+
+    // Startup waits for the first load, so clicks are resolved from the start
+    @PostConstruct
+    public void loadOnStartup() {
+        if (file == null) {
+            log.info("No GeoIP file configured; clicks will be recorded without country and city");
+            return;
+        }
+        try {
+            load(Files.getLastModifiedTime(file));
+        } catch (IOException e) {
+            log.error("Failed to read GeoIP file {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    // Null when the address is unparsable or in no known range
+    public Location lookup(String ipAddress) {
+        IpAddresses.Parsed address = parsed.get();
+        if (!IpAddresses.parse(ipAddress, address)) {
+            return null;
+        }
+        GeoIpDatabase current = database;
+        return address.isIpv4()
+                ? current.findIpv4(address.ipv4())
+                : current.findIpv6(address.high(), address.low());
+    }
+
+    // Only checks the file's modification time; a changed file is handed to the loader thread
+    @Scheduled(fixedDelayString = "${app.analytics.geoip.reload-interval-ms:60000}",
+            initialDelayString = "${app.analytics.geoip.reload-interval-ms:60000}")
+    public void reload() {
+        if (file == null) {
+            return;
+        }
+        FileTime version;
+        try {
+            version = Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            log.error("Failed to check GeoIP file {}, keeping the {} ranges already loaded", file, database.rangeCount(), e);
+            return;
+        }
+        if (version.equals(loadedVersion) || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        loader.execute(() -> {
+            try {
+                load(version);
+            } finally {
+                loading.set(false);
+            }
+        });
+    }
+
+    private void load(FileTime version) {
+        try {
+            long start = System.currentTimeMillis();
+            GeoIpDatabase loaded = GeoIpDatabase.load(file, countryColumn, cityColumn);
+            database = loaded;
+            loadedVersion = version;
+            log.info("Loaded {} GeoIP ranges from {} in {} ms", loaded.rangeCount(), file, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            // The version stays unloaded, so the next check tries again
+            log.error("Failed to load GeoIP file {}, keeping the {} ranges already loaded", file, database.rangeCount(), e);
+        }
+    }
+
+    // Country is an ISO 3166 alpha-2 code; DB-IP's "ZZ" for unassigned space becomes null
+    public record Location(String country, String city) {
+
+        static Location of(String country, String city) {
+            String code = country == null || country.length() != 2 || country.equals("ZZ") ? null : country;
+            String name = city == null || city.isBlank() ? null
+                    : city.length() > MAX_CITY_LENGTH ? city.substring(0, MAX_CITY_LENGTH) : city;
+            return new Location(code, name);
+        }
+    }
+}
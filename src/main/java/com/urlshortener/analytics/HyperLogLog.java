@@ -0,0 +1,226 @@
+package com.urlshortener.analytics;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog cardinality sketch with 2^14 registers, giving a relative standard error of about
+ * 0.81% (1.04 / sqrt(16384)) whatever the number of distinct values. Estimates use Ertl's improved
+ * estimator ("New cardinality estimation algorithms for HyperLogLog sketches", 2017), which
+ * needs no bias correction tables and has no switch-over to linear counting, where the classic
+ * estimator is off by a few percent. Sketches of the same precision merge by taking the
+ * register-wise maximum, so merging is lossless and idempotent.
+ *
+ * <p>A sketch starts sparse, keeping only its non-zero registers, and turns dense once that
+ * stops saving space. Serialized sparse sketches take 3 bytes per register set; dense ones pack
+ * registers into 6 bits each, 12 KiB in total. Not thread-safe.
+ */
+public class HyperLogLog {
+
+    public static final int PRECISION = 14;
+    public static final double RELATIVE_STANDARD_ERROR = 1.04 / Math.sqrt(1 << PRECISION);
+
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final int SPARSE_LIMIT = REGISTER_COUNT / 8;
+    private static final byte FORMAT_SPARSE = 1;
+    private static final byte FORMAT_DENSE = 2;
+    // Ranks count the leading zeros of the 64 - PRECISION hash bits left after the index, plus one
+    private static final int MAX_RANK = 64 - PRECISION + 1;
+    private static final double ALPHA_INFINITY = 0.5 / Math.log(2);
+
+    // Sparse entries are (register index << 8 | value), sorted by index
+    private int[] sparse = new int[8];
+    private int sparseSize;
+    private byte[] registers;
+
+    public void add(byte[] value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        set(index, rank);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.registers != null) {
+            for (int i = 0; i < REGISTER_COUNT; i++) {
+                if (other.registers[i] != 0) {
+                    set(i, other.registers[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                set(other.sparse[i] >>> 8, other.sparse[i] & 0xff);
+            }
+        }
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog();
+        copy.merge(this);
+        return copy;
+    }
+
+    public long estimate() {
+        int[] histogram = new int[MAX_RANK + 1];
+        if (registers != null) {
+            for (byte register : registers) {
+                histogram[register]++;
+            }
+        } else {
+            histogram[0] = REGISTER_COUNT - sparseSize;
+            for (int i = 0; i < sparseSize; i++) {
+                histogram[sparse[i] & 0xff]++;
+            }
+        }
+        double m = REGISTER_COUNT;
+        double z = m * tau(1 - histogram[MAX_RANK] / m);
+        for (int rank = MAX_RANK - 1; rank >= 1; rank--) {
+            z = 0.5 * (z + histogram[rank]);
+        }
+        z += m * sigma(histogram[0] / m);
+        // An empty sketch makes z infinite and the estimate 0
+        return Math.round(ALPHA_INFINITY * m * m / z);
+    }
+
+    public byte[] toBytes() {
+        if (registers == null) {
+            byte[] bytes = new byte[2 + sparseSize * 3];
+            bytes[0] = FORMAT_SPARSE;
+            bytes[1] = PRECISION;
+            for (int i = 0, offset = 2; i < sparseSize; i++, offset += 3) {
+                int index = sparse[i] >>> 8;
+                bytes[offset] = (byte) (index >>> 8);
+                bytes[offset + 1] = (byte) index;
+                bytes[offset + 2] = (byte) sparse[i];
+            }
+            return bytes;
+        }
+        byte[] bytes = new byte[2 + REGISTER_COUNT * 6 / 8];
+        bytes[0] = FORMAT_DENSE;
+        bytes[1] = PRECISION;
+        long bitOffset = 16;
+        for (byte register : registers) {
+            for (int bit = 5; bit >= 0; bit--, bitOffset++) {
+                if ((register & (1 << bit)) != 0) {
+                    bytes[(int) (bitOffset >>> 3)] |= (byte) (0x80 >>> (bitOffset & 7));
+                }
+            }
+        }
+        return bytes;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog();
+        if (bytes == null || bytes.length == 0) {
+            return sketch;
+        }
+        if (bytes.length < 2 || bytes[1] != PRECISION) {
+            throw new IllegalArgumentException("Unsupported HyperLogLog sketch");
+        }
+        if (bytes[0] == FORMAT_SPARSE) {
+            for (int offset = 2; offset + 2 < bytes.length; offset += 3) {
+                int index = (bytes[offset] & 0xff) << 8 | (bytes[offset + 1] & 0xff);
+                sketch.set(index, bytes[offset + 2] & 0xff);
+            }
+        } else if (bytes[0] == FORMAT_DENSE) {
+            sketch.registers = new byte[REGISTER_COUNT];
+            long bitOffset = 16;
+            for (int i = 0; i < REGISTER_COUNT; i++) {
+                int register = 0;
+                for (int bit = 0; bit < 6; bit++, bitOffset++) {
+                    register = register << 1 | ((bytes[(int) (bitOffset >>> 3)] >>> (7 - (bitOffset & 7))) & 1);
+                }
+                sketch.registers[i] = (byte) register;
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported HyperLogLog sketch format " + bytes[0]);
+        }
+        return sketch;
+    }
+
+    private void set(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        int position = Arrays.binarySearch(sparse, 0, sparseSize, index << 8 | 0xff);
+        // Searching for the largest possible entry lands just past any entry for this index
+        int insertAt = -position - 1;
+        if (insertAt > 0 && sparse[insertAt - 1] >>> 8 == index) {
+            if (rank > (sparse[insertAt - 1] & 0xff)) {
+                sparse[insertAt - 1] = index << 8 | rank;
+            }
+            return;
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toDense();
+            registers[index] = (byte) rank;
+            return;
+        }
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, sparse.length * 2);
+        }
+        System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+        sparse[insertAt] = index << 8 | rank;
+        sparseSize++;
+    }
+
+    private void toDense() {
+        registers = new byte[REGISTER_COUNT];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xff);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    // Corrects for registers still empty; sums x + x^2 + 2x^4 + 4x^8 + ... until it stops changing
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    // Corrects for registers at the maximum rank, which practically never happens with 64-bit hashes
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    // FNV-1a over the bytes, finished with the MurmurHash3 64-bit mixer
+    private static long hash(byte[] value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
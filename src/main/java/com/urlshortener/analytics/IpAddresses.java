@@ -0,0 +1,277 @@
+package com.urlshortener.analytics;
+
+/**
+ * Allocation-free parsing of textual IPv4 and IPv6 addresses into a reusable {@link Parsed}
+ * holder. IPv4 addresses, including IPv4-mapped IPv6 ones such as ::ffff:192.0.2.1, come out as
+ * IPv4 and also as their mapped 128-bit form, which is also the canonical 16-byte form clicks
+ * are stored in.
+ */
+public final class IpAddresses {
+
+    private static final long IPV4_MAPPED_HIGH = 0L;
+    private static final long IPV4_MAPPED_LOW_PREFIX = 0xffffL << 32;
+
+    private static final ThreadLocal<Parsed> SCRATCH = ThreadLocal.withInitial(Parsed::new);
+
+    private IpAddresses() {
+    }
+
+    public static boolean isValid(CharSequence text) {
+        return parse(text, SCRATCH.get());
+    }
+
+    /**
+     * The canonical 16-byte form of an address, with IPv4 as IPv4-mapped IPv6, keeping only the
+     * first prefix length bits of the address; null when text isn't an IP address.
+     */
+    public static byte[] toBytes(CharSequence text, int ipv4PrefixLength, int ipv6PrefixLength) {
+        Parsed address = SCRATCH.get();
+        if (!parse(text, address)) {
+            return null;
+        }
+        long high = address.high;
+        long low = address.low;
+        int prefixLength = address.ipv4 ? 96 + ipv4PrefixLength : ipv6PrefixLength;
+        if (prefixLength <= 64) {
+            high &= prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+            low = 0;
+        } else if (prefixLength < 128) {
+            low &= -1L << (128 - prefixLength);
+        }
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    // Dotted quad for IPv4-mapped addresses, RFC 5952 text for the rest
+    public static String format(byte[] bytes) {
+        if (bytes == null || bytes.length != 16) {
+            return null;
+        }
+        boolean ipv4 = bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff;
+        for (int i = 0; i < 10 && ipv4; i++) {
+            ipv4 = bytes[i] == 0;
+        }
+        if (ipv4) {
+            return (bytes[12] & 0xff) + "." + (bytes[13] & 0xff) + "." + (bytes[14] & 0xff) + "." + (bytes[15] & 0xff);
+        }
+        int[] groups = new int[8];
+        for (int g = 0; g < 8; g++) {
+            groups[g] = (bytes[2 * g] & 0xff) << 8 | (bytes[2 * g + 1] & 0xff);
+        }
+        // The longest run of two or more zero groups, the first one on ties, becomes "::"
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int g = 0; g < 8; g++) {
+            int length = 0;
+            while (g + length < 8 && groups[g + length] == 0) {
+                length++;
+            }
+            if (length > bestLength) {
+                bestStart = g;
+                bestLength = length;
+            }
+            g += length;
+        }
+        StringBuilder text = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g == bestStart) {
+                text.append("::");
+                g += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groups[g]));
+        }
+        return text.toString();
+    }
+
+    // Returns false, leaving target in an unspecified state, when text isn't an IP address
+    public static boolean parse(CharSequence text, Parsed target) {
+        if (text == null) {
+            return false;
+        }
+        int end = text.length();
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '%') {
+                // Drops an IPv6 zone index such as fe80::1%eth0
+                end = i;
+                break;
+            }
+        }
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == ':') {
+                return parseIpv6(text, end, target);
+            }
+        }
+        long ipv4 = parseIpv4(text, 0, end);
+        if (ipv4 < 0) {
+            return false;
+        }
+        target.setIpv4((int) ipv4);
+        return true;
+    }
+
+    // The address as an unsigned 32-bit value, or -1 when the range isn't a dotted quad
+    private static long parseIpv4(CharSequence text, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int value = 0;
+            int digits = 0;
+            while (i < to && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                value = value * 10 + (text.charAt(i) - '0');
+                digits++;
+                i++;
+                if (digits > 3) {
+                    return -1;
+                }
+            }
+            if (digits == 0 || value > 255 || ++octets > 4) {
+                return -1;
+            }
+            address = address << 8 | value;
+            if (i < to) {
+                if (text.charAt(i) != '.' || i + 1 == to) {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private static boolean parseIpv6(CharSequence text, int end, Parsed target) {
+        int[] groups = target.groups;
+        int count = 0;
+        int compressedAt = -1;
+        int i = 0;
+        if (end >= 2 && text.charAt(0) == ':' && text.charAt(1) == ':') {
+            compressedAt = 0;
+            i = 2;
+        } else if (end > 0 && text.charAt(0) == ':') {
+            return false;
+        }
+        while (i < end) {
+            int start = i;
+            int value = 0;
+            int digits = 0;
+            while (i < end && hexDigit(text.charAt(i)) >= 0) {
+                value = value << 4 | hexDigit(text.charAt(i));
+                digits++;
+                i++;
+            }
+            if (i < end && text.charAt(i) == '.') {
+                // Dotted IPv4 tail, as in ::ffff:192.0.2.1
+                long ipv4 = count <= 6 ? parseIpv4(text, start, end) : -1;
+                if (ipv4 < 0) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                i = end;
+                break;
+            }
+            if (digits == 0 || digits > 4 || count == 8) {
+                return false;
+            }
+            groups[count++] = value;
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == end) {
+                return false;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = count;
+                i++;
+            }
+        }
+        if (compressedAt < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+        if (compressedAt >= 0) {
+            int tail = count - compressedAt;
+            System.arraycopy(groups, compressedAt, groups, 8 - tail, tail);
+            for (int g = compressedAt; g < 8 - tail; g++) {
+                groups[g] = 0;
+            }
+        }
+        long high = 0;
+        long low = 0;
+        for (int g = 0; g < 4; g++) {
+            high = high << 16 | groups[g];
+            low = low << 16 | groups[g + 4];
+        }
+        if (high == IPV4_MAPPED_HIGH && (low & 0xffffffff00000000L) == IPV4_MAPPED_LOW_PREFIX) {
+            target.setIpv4((int) low);
+        } else {
+            target.setIpv6(high, low);
+        }
+        return true;
+    }
+
+    // ASCII only; Character.digit would also accept other scripts' digits from a forged header
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    // Reusable parse result; keep one per thread to parse without allocating
+    public static final class Parsed {
+
+        private final int[] groups = new int[8];
+        private boolean ipv4;
+        private int ipv4Address;
+        private long high;
+        private long low;
+
+        public boolean isIpv4() {
+            return ipv4;
+        }
+
+        public int ipv4() {
+            return ipv4Address;
+        }
+
+        // Upper and lower 64 bits of the 128-bit address, IPv4 as IPv4-mapped
+        public long high() {
+            return high;
+        }
+
+        public long low() {
+            return low;
+        }
+
+        private void setIpv4(int address) {
+            ipv4 = true;
+            ipv4Address = address;
+            high = IPV4_MAPPED_HIGH;
+            low = IPV4_MAPPED_LOW_PREFIX | (address & 0xffffffffL);
+        }
+
+        private void setIpv6(long high, long low) {
+            ipv4 = false;
+            this.high = high;
+            this.low = low;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.urlshortener.analytics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Reduces referers to the host they came from, so https://t.co/abc and https://t.co/xyz count as
+ * one referer. The host is lowercased and loses any user info, port, trailing dot and leading
+ * "www."; optionally the first few path segments are kept as a coarse path class, as in
+ * news.ycombinator.com/item. Results are memoized per distinct referer.
+ */
+@Component
+public class RefererNormalizer {
+
+    private static final String NONE = "";
+
+    // Longer referers are parsed but not cached, like long user agents
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private final int pathSegments;
+    private final Cache<String, String> hosts;
+
+    public RefererNormalizer(MeterRegistry meterRegistry,
+                             @Value("${app.analytics.referers.cache-size:10000}") long cacheSize,
+                             @Value("${app.analytics.referers.path-segments:0}") int pathSegments) {
+        this.pathSegments = pathSegments;
+        this.hosts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hosts, "refererHosts");
+    }
+
+    // Null for a missing referer or one without a host, such as about:blank
+    public String host(String referer) {
+        if (referer == null || referer.isEmpty()) {
+            return null;
+        }
+        String host = referer.length() > MAX_CACHED_LENGTH
+                ? normalize(referer, pathSegments)
+                : hosts.get(referer, r -> normalize(r, pathSegments));
+        return host == NONE ? null : host;
+    }
+
+    static String normalize(String referer, int pathSegments) {
+        int end = referer.length();
+        while (end > 0 && referer.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int start = 0;
+        while (start < end && referer.charAt(start) <= ' ') {
+            start++;
+        }
+        // An absolute or scheme-relative URL: [scheme:]//authority[/path][?query][#fragment]
+        int i = start;
+        if (i < end && isAsciiLetter(referer.charAt(i))) {
+            while (i < end && isSchemeChar(referer.charAt(i))) {
+                i++;
+            }
+        }
+        if (i > start && i < end && referer.charAt(i) == ':') {
+            i++;
+        } else {
+            i = start;
+        }
+        if (!referer.startsWith("//", i)) {
+            return NONE;
+        }
+        int authorityStart = i + 2;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && "/?#".indexOf(referer.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        int hostStart = referer.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd;
+        if (hostStart < authorityEnd && referer.charAt(hostStart) == '[') {
+            hostEnd = referer.indexOf(']', hostStart);
+            if (hostEnd < 0 || hostEnd >= authorityEnd) {
+                return NONE;
+            }
+            for (int c = hostStart + 1; c < hostEnd; c++) {
+                if (!isHostChar(referer.charAt(c)) && referer.charAt(c) != ':') {
+                    return NONE;
+                }
+            }
+            hostEnd++;
+        } else {
+            hostEnd = hostStart;
+            while (hostEnd < authorityEnd && referer.charAt(hostEnd) != ':') {
+                if (!isHostChar(referer.charAt(hostEnd))) {
+                    return NONE;
+                }
+                hostEnd++;
+            }
+        }
+        while (hostEnd > hostStart && referer.charAt(hostEnd - 1) == '.') {
+            hostEnd--;
+        }
+        if (referer.regionMatches(true, hostStart, "www.", 0, 4) && hostEnd - hostStart > 4) {
+            hostStart += 4;
+        }
+        if (hostStart == hostEnd) {
+            return NONE;
+        }
+        String host = referer.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT);
+        if (pathSegments <= 0) {
+            return host;
+        }
+        StringBuilder withPath = new StringBuilder(host);
+        appendPathSegments(withPath, referer, authorityEnd, end, pathSegments);
+        return withPath.toString();
+    }
+
+    // Empty segments are skipped, so /a//b and /a/b/ give the same path class
+    private static void appendPathSegments(StringBuilder host, String referer, int from, int end, int pathSegments) {
+        int i = from;
+        int kept = 0;
+        while (kept < pathSegments && i < end && referer.charAt(i) == '/') {
+            int segmentStart = ++i;
+            while (i < end && "/?#".indexOf(referer.charAt(i)) < 0) {
+                i++;
+            }
+            if (i > segmentStart) {
+                host.append('/').append(referer, segmentStart, i);
+                kept++;
+            }
+        }
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // A scheme starts with a letter, checked separately
+    private static boolean isSchemeChar(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.';
+    }
+
+    // Letters beyond ASCII are allowed for hosts sent without punycode; IPv6 literals may also have ':'
+    private static boolean isHostChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '.' || c == '_' || c == '%';
+    }
+}
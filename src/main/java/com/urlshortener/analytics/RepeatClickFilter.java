@@ -0,0 +1,207 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recognizes repeat clicks: the same url, client IP and user agent again within a short window,
+ * as when a visitor refreshes or a client retries. Clicks are remembered as 64-bit fingerprints
+ * in two fixed-size open-addressing tables, one per window-long generation of click time; when a
+ * new generation starts the older table is cleared and reused. A click is a repeat if either
+ * table holds its fingerprint, so repeats are caught for at least one window and at most two.
+ *
+ * <p>Memory is allocated once and never grows. Once a generation holds max-entries fingerprints,
+ * further clicks in it are let through as new rather than remembered.
+ */
+@Slf4j
+@Component
+public class RepeatClickFilter {
+
+    private static final long EMPTY = 0;
+    private static final long REMOVED = 1;
+
+    private final boolean enabled;
+    private final boolean countRepeats;
+    private final long windowMillis;
+    private final int maxEntries;
+    private final Counter repeats;
+    private final Counter saturated;
+
+    private long[] current;
+    private long[] previous;
+    private int currentSize;
+    private int previousSize;
+    private long currentStart = Long.MIN_VALUE;
+
+    public RepeatClickFilter(MeterRegistry meterRegistry,
+                             @Value("${app.analytics.dedup.enabled:false}") boolean enabled,
+                             @Value("${app.analytics.dedup.window:10s}") Duration window,
+                             @Value("${app.analytics.dedup.count-repeats:true}") boolean countRepeats,
+                             @Value("${app.analytics.dedup.max-entries:250000}") int maxEntries) {
+        this.enabled = enabled;
+        this.countRepeats = countRepeats;
+        this.windowMillis = window.toMillis();
+        this.maxEntries = maxEntries;
+        // At most half full, so probe sequences stay short
+        int capacity = enabled ? Integer.highestOneBit(Math.max(maxEntries, 1) * 2 - 1) << 1 : 0;
+        this.current = new long[capacity];
+        this.previous = new long[capacity];
+        this.repeats = Counter.builder("clicks.dedup.repeats")
+                .description("Clicks recognized as repeats within the dedup window")
+                .register(meterRegistry);
+        this.saturated = Counter.builder("clicks.dedup.saturated")
+                .description("Clicks let through unremembered because the dedup table was full")
+                .register(meterRegistry);
+        Gauge.builder("clicks.dedup.entries", this, RepeatClickFilter::size)
+                .description("Click fingerprints remembered for deduplication")
+                .register(meterRegistry);
+        Gauge.builder("clicks.dedup.memory", this, filter -> 16.0 * filter.current.length)
+                .description("Memory held by the dedup tables")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Deduplicating repeat clicks within {} using {} KiB", window, 16L * capacity / 1024);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Whether repeats still add to click_count; they never get a click_analytics row
+    public boolean countsRepeats() {
+        return countRepeats;
+    }
+
+    // Remembers the click unless it is a repeat
+    public synchronized boolean isRepeat(ClickEvent event) {
+        if (!enabled) {
+            return false;
+        }
+        advance(epochMillis(event.clickedAt()));
+        long fingerprint = fingerprint(event);
+        if (contains(current, fingerprint) || contains(previous, fingerprint)) {
+            repeats.increment();
+            return true;
+        }
+        if (currentSize >= maxEntries) {
+            saturated.increment();
+            return false;
+        }
+        insert(current, fingerprint);
+        currentSize++;
+        return false;
+    }
+
+    // Undoes isRepeat for clicks whose rows were rolled back, so a retry of the batch isn't taken for repeats
+    public synchronized void forget(List<ClickEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        // Sizes stay as they are: they count used slots, and a removed slot is only reused by a later insert
+        for (ClickEvent event : events) {
+            long fingerprint = fingerprint(event);
+            if (!remove(current, fingerprint)) {
+                remove(previous, fingerprint);
+            }
+        }
+    }
+
+    private synchronized int size() {
+        return currentSize + previousSize;
+    }
+
+    // Starts a new generation once click time passes the current one; clicks that arrive late just use the current one
+    private void advance(long now) {
+        if (now < currentStart + windowMillis) {
+            return;
+        }
+        if (now < currentStart + 2 * windowMillis) {
+            long[] reused = previous;
+            previous = current;
+            previousSize = currentSize;
+            current = reused;
+            currentStart += windowMillis;
+        } else {
+            Arrays.fill(previous, EMPTY);
+            previousSize = 0;
+            currentStart = now;
+        }
+        Arrays.fill(current, EMPTY);
+        currentSize = 0;
+    }
+
+    private static boolean contains(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            if (entry == fingerprint) {
+                return true;
+            }
+            if (entry == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private static void insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (table[slot] != EMPTY && table[slot] != REMOVED) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+    }
+
+    private static boolean remove(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            if (entry == fingerprint) {
+                table[slot] = REMOVED;
+                return true;
+            }
+            if (entry == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    // FNV-1a over the url id, IP and user agent, finished with the Murmur3 mixer; 0 and 1 mark empty and removed slots
+    private static long fingerprint(ClickEvent event) {
+        long hash = 0xcbf29ce484222325L ^ event.urlId();
+        hash = hash(hash, event.ipAddress());
+        hash = hash(hash, event.userAgent());
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY || hash == REMOVED ? hash + 2 : hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xff) * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // Separator, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0x1f) * 0x100000001b3L;
+    }
+}
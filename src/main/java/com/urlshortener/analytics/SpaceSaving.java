@@ -0,0 +1,175 @@
+package com.urlshortener.analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters summary with a fixed number of counters. Every value with more than
+ * total / capacity clicks is guaranteed to hold a counter, and a counter's count overstates the
+ * value's true count by at most its error, itself never more than total / capacity.
+ *
+ * <p>Summaries merge by adding counters; a value missing from one side is charged that side's
+ * smallest count as possible error. The merged summary keeps the same guarantees for the
+ * combined clicks. Not thread-safe.
+ */
+public class SpaceSaving {
+
+    private static final byte FORMAT = 1;
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(String value, long weight) {
+        total += weight;
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(value, new Counter(value, weight, 0));
+            return;
+        }
+        // The new value takes over the smallest counter, inheriting its count as possible error
+        Counter smallest = smallest();
+        counters.remove(smallest.value);
+        counters.put(value, new Counter(value, smallest.count + weight, smallest.count));
+    }
+
+    public void merge(SpaceSaving other) {
+        long ownMinimum = counters.size() < capacity ? 0 : smallest().count;
+        long otherMinimum = other.counters.size() < other.capacity ? 0 : other.smallest().count;
+        for (Counter counter : counters.values()) {
+            if (!other.counters.containsKey(counter.value)) {
+                counter.count += otherMinimum;
+                counter.error += otherMinimum;
+            }
+        }
+        for (Counter theirs : other.counters.values()) {
+            Counter ours = counters.get(theirs.value);
+            if (ours != null) {
+                ours.count += theirs.count;
+                ours.error += theirs.error;
+            } else {
+                counters.put(theirs.value, new Counter(theirs.value, theirs.count + ownMinimum, theirs.error + ownMinimum));
+            }
+        }
+        total += other.total;
+        if (counters.size() > capacity) {
+            List<Counter> kept = sortedCounters().subList(0, capacity);
+            counters.clear();
+            for (Counter counter : kept) {
+                counters.put(counter.value, counter);
+            }
+        }
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        copy.merge(this);
+        return copy;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    // The k largest counters, most clicked first
+    public List<Entry> top(int k) {
+        List<Counter> sorted = sortedCounters();
+        List<Entry> top = new ArrayList<>(Math.min(k, sorted.size()));
+        for (Counter counter : sorted.subList(0, Math.min(k, sorted.size()))) {
+            top.add(new Entry(counter.value, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeLong(total);
+            out.writeInt(counters.size());
+            for (Counter counter : counters.values()) {
+                out.writeUTF(counter.value);
+                out.writeLong(counter.count);
+                out.writeLong(counter.error);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Summaries stored with a different capacity keep their largest counters
+    public static SpaceSaving fromBytes(byte[] bytes, int capacity) {
+        SpaceSaving summary = new SpaceSaving(capacity);
+        if (bytes == null || bytes.length == 0) {
+            return summary;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != FORMAT) {
+                throw new IllegalArgumentException("Unsupported Space-Saving summary format");
+            }
+            long total = in.readLong();
+            int size = in.readInt();
+            SpaceSaving stored = new SpaceSaving(Math.max(size, 1));
+            for (int i = 0; i < size; i++) {
+                String value = in.readUTF();
+                stored.counters.put(value, new Counter(value, in.readLong(), in.readLong()));
+            }
+            stored.total = total;
+            summary.merge(stored);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt Space-Saving summary", e);
+        }
+        return summary;
+    }
+
+    private Counter smallest() {
+        Counter smallest = null;
+        for (Counter counter : counters.values()) {
+            if (smallest == null || counter.count < smallest.count) {
+                smallest = counter;
+            }
+        }
+        return smallest;
+    }
+
+    private List<Counter> sortedCounters() {
+        List<Counter> sorted = new ArrayList<>(counters.values());
+        sorted.sort(Comparator.comparingLong((Counter counter) -> counter.count).reversed());
+        return sorted;
+    }
+
+    // count - error <= true count <= count
+    public record Entry(String value, long count, long error) {
+    }
+
+    private static final class Counter {
+
+        private final String value;
+        private long count;
+        private long error;
+
+        private Counter(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.urlshortener.analytics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Aho-Corasick automaton telling whether a string contains any of a fixed set of ASCII tokens,
+ * ignoring ASCII case. Failure links are folded into a full transition table, so a match costs
+ * one array lookup per character however many tokens there are, and allocates nothing.
+ */
+final class TokenMatcher {
+
+    private static final int ALPHABET = 128;
+
+    // transitions[state * ALPHABET + c] is the next state; state 0 is the root
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    TokenMatcher(Collection<String> tokens) {
+        int maxStates = 1;
+        for (String token : tokens) {
+            maxStates += token.length();
+        }
+        int[] trie = new int[maxStates * ALPHABET];
+        Arrays.fill(trie, -1);
+        boolean[] terminal = new boolean[maxStates];
+        int states = 1;
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                throw new IllegalArgumentException("Empty tokens would match everything");
+            }
+            String lower = token.toLowerCase(Locale.ROOT);
+            int state = 0;
+            for (int i = 0; i < lower.length(); i++) {
+                char c = lower.charAt(i);
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("Token is not ASCII: " + token);
+                }
+                int next = trie[state * ALPHABET + c];
+                if (next < 0) {
+                    next = states++;
+                    trie[state * ALPHABET + c] = next;
+                }
+                state = next;
+            }
+            terminal[state] = true;
+        }
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET);
+        this.accepting = Arrays.copyOf(terminal, states);
+        link(states);
+    }
+
+    boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= ALPHABET) {
+                // No token contains it, so no match can span it
+                state = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state * ALPHABET + c];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int stateCount() {
+        return accepting.length;
+    }
+
+    // Breadth first, so each state's failure state is complete before the state is
+    private void link(int states) {
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = transitions[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int fallback = failure[state];
+            accepting[state] |= accepting[fallback];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = transitions[state * ALPHABET + c];
+                if (next < 0) {
+                    transitions[state * ALPHABET + c] = transitions[fallback * ALPHABET + c];
+                } else {
+                    failure[next] = transitions[fallback * ALPHABET + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.entity.ClickDimension.Dimension;
+import com.urlshortener.repository.TopValueRepository;
+import com.urlshortener.repository.TopValueRepository.Key;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks each url's most clicked referer hosts and countries with Space-Saving summaries.
+ * Ingested clicks update in-memory summaries that are checkpointed into the stored ones every
+ * few seconds, so the top values are read from one small row per url however many clicks it has.
+ * With the default 100 counters a reported count overstates the true one by at most 1% of the
+ * url's clicks, and the exact bound of each value is returned with it.
+ *
+ * <p>Until the backfill has summarized clicks recorded before summaries existed, {@link #isReady()}
+ * is false and callers should rank from the raw clicks or rollups instead.
+ */
+@Slf4j
+@Component
+public class TopValueSummaries {
+
+    public static final List<Dimension> DIMENSIONS = List.of(Dimension.REFERER_HOST, Dimension.COUNTRY);
+
+    private final TopValueRepository topValueRepository;
+    private final ClickColumnBackfill clickColumnBackfill;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int capacity;
+    private final int backfillChunkSize;
+    private final ConcurrentHashMap<Key, SpaceSaving> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    public TopValueSummaries(TopValueRepository topValueRepository,
+                             ClickColumnBackfill clickColumnBackfill,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.analytics.top-values.enabled:true}") boolean enabled,
+                             @Value("${app.analytics.top-values.capacity:100}") int capacity,
+                             @Value("${app.analytics.top-values.backfill.chunk-size:50000}") int backfillChunkSize) {
+        this.topValueRepository = topValueRepository;
+        this.clickColumnBackfill = clickColumnBackfill;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.backfillChunkSize = backfillChunkSize;
+        Gauge.builder("clicks.top_values.pending", pending, Map::size)
+                .description("Top value summaries with updates not yet checkpointed")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // refererHost is the value from RefererNormalizer
+    public void add(long urlId, String refererHost, String country, long weight) {
+        if (!enabled) {
+            return;
+        }
+        add(pending, urlId, refererHost, country, weight);
+    }
+
+    // The k most clicked values of each dimension, stored and pending clicks combined
+    public Map<Dimension, List<SpaceSaving.Entry>> top(long urlId, int k) {
+        Map<String, byte[]> stored = topValueRepository.findSummaries(urlId);
+        Map<Dimension, List<SpaceSaving.Entry>> top = new HashMap<>();
+        for (Dimension dimension : DIMENSIONS) {
+            SpaceSaving summary = SpaceSaving.fromBytes(stored.get(dimension.name()), capacity);
+            pending.computeIfPresent(new Key(urlId, dimension.name()), (key, delta) -> {
+                summary.merge(delta);
+                return delta;
+            });
+            top.put(dimension, summary.top(k));
+        }
+        return top;
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.top-values.checkpoint-interval-ms:10000}")
+    public synchronized void checkpoint() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Key, SpaceSaving> batch = new HashMap<>();
+        for (Key key : pending.keySet()) {
+            SpaceSaving summary = pending.remove(key);
+            if (summary != null) {
+                batch.put(key, summary);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> mergeIntoDatabase(batch));
+            log.debug("Checkpointed {} top value summaries", batch.size());
+        } catch (RuntimeException e) {
+            // Nothing was written, so the deltas go back to be merged on the next run
+            batch.forEach((key, summary) -> pending.merge(key, summary, (current, failed) -> {
+                current.merge(failed);
+                return current;
+            }));
+            log.error("Failed to checkpoint {} top value summaries, will retry", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void checkpointOnShutdown() {
+        checkpoint();
+        if (!pending.isEmpty()) {
+            log.warn("Shutting down with {} top value summaries not checkpointed", pending.size());
+        }
+    }
+
+    // One chunk per run, so a long backfill never holds a scheduler thread for more than one transaction.
+    // Held back until referer_host_id is filled in; unconverted clicks would be missing from the referer summaries
+    @Scheduled(fixedDelayString = "${app.analytics.top-values.backfill.interval-ms:1000}")
+    public void backfill() {
+        if (!enabled || ready || !clickColumnBackfill.isReady()) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillChunk()))) {
+                ready = true;
+            }
+        } catch (RuntimeException e) {
+            log.error("Top value backfill failed, will retry", e);
+        }
+    }
+
+    // One chunk per transaction; the progress row lock keeps other instances from summarizing the same clicks
+    private boolean backfillChunk() {
+        long[] progress = topValueRepository.lockBackfillProgress();
+        long lastClickId = progress[0];
+        long targetClickId = progress[1];
+        if (lastClickId >= targetClickId) {
+            return true;
+        }
+        long toClickId = Math.min(targetClickId, lastClickId + backfillChunkSize);
+        Map<Key, SpaceSaving> summaries = new HashMap<>();
+        topValueRepository.forEachClick(lastClickId, toClickId, rs -> add(summaries,
+                rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4)));
+        mergeIntoDatabase(summaries);
+        topValueRepository.updateBackfillProgress(toClickId);
+        log.info("Summarized top values of clicks {} to {} of {}", lastClickId + 1, toClickId, targetClickId);
+        return toClickId >= targetClickId;
+    }
+
+    private void mergeIntoDatabase(Map<Key, SpaceSaving> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        Map<Key, byte[]> stored = topValueRepository.lockSummaries(summaries.keySet());
+        Map<Key, byte[]> merged = new HashMap<>();
+        for (Map.Entry<Key, SpaceSaving> entry : summaries.entrySet()) {
+            SpaceSaving summary = SpaceSaving.fromBytes(stored.get(entry.getKey()), capacity);
+            summary.merge(entry.getValue());
+            merged.put(entry.getKey(), summary.toBytes());
+        }
+        topValueRepository.updateSummaries(merged);
+    }
+
+    private void add(Map<Key, SpaceSaving> summaries, long urlId, String refererHost, String country, long weight) {
+        if (refererHost != null) {
+            add(summaries, new Key(urlId, Dimension.REFERER_HOST.name()), refererHost, weight);
+        }
+        if (country != null) {
+            add(summaries, new Key(urlId, Dimension.COUNTRY.name()), country, weight);
+        }
+    }
+
+    private void add(Map<Key, SpaceSaving> summaries, Key key, String value, long weight) {
+        summaries.compute(key, (k, summary) -> {
+            SpaceSaving updated = summary != null ? summary : new SpaceSaving(capacity);
+            updated.add(value, weight);
+            return updated;
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package com.urlshortener.analytics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Classifies user agents into device type, browser and operating system in a single
+ * case-insensitive scan of the string, memoizing results per distinct user agent.
+ */
+@Component
+public class UserAgentClassifier {
+
+    public static final Classification UNKNOWN = new Classification("Unknown", "Unknown", "Unknown");
+
+    // Longer user agents are classified but not cached, so one key can't pin kilobytes of heap
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private static final int MOBILE = 1;
+    private static final int ANDROID = 1 << 1;
+    private static final int TABLET = 1 << 2;
+    private static final int IPAD = 1 << 3;
+    private static final int IPHONE = 1 << 4;
+    private static final int IOS = 1 << 5;
+    private static final int EDGE = 1 << 6;
+    private static final int OPERA = 1 << 7;
+    private static final int CHROME = 1 << 8;
+    private static final int FIREFOX = 1 << 9;
+    private static final int SAFARI = 1 << 10;
+    private static final int WINDOWS = 1 << 11;
+    private static final int MAC = 1 << 12;
+    private static final int LINUX = 1 << 13;
+
+    private final Cache<String, Classification> classifications;
+
+    public UserAgentClassifier(MeterRegistry meterRegistry,
+                               @Value("${app.analytics.user-agent-cache.max-size:10000}") long maxSize) {
+        this.classifications = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, classifications, "userAgents");
+    }
+
+    public Classification classify(String userAgent) {
+        if (userAgent == null) {
+            return UNKNOWN;
+        }
+        if (userAgent.length() > MAX_CACHED_LENGTH) {
+            return classifyUncached(userAgent);
+        }
+        return classifications.get(userAgent, UserAgentClassifier::classifyUncached);
+    }
+
+    static Classification classifyUncached(String userAgent) {
+        return toClassification(scan(userAgent));
+    }
+
+    private static int scan(String ua) {
+        int flags = 0;
+        int length = ua.length();
+        for (int i = 0; i < length; i++) {
+            switch (toLowerAscii(ua.charAt(i))) {
+                case 'a' -> flags |= match(ua, i, "android", ANDROID);
+                case 'c' -> flags |= match(ua, i, "chrome", CHROME);
+                case 'e' -> flags |= match(ua, i, "edg", EDGE);
+                case 'f' -> flags |= match(ua, i, "firefox", FIREFOX);
+                case 'i' -> flags |= match(ua, i, "ipad", IPAD) | match(ua, i, "iphone", IPHONE) | match(ua, i, "ios", IOS);
+                case 'l' -> flags |= match(ua, i, "linux", LINUX);
+                case 'm' -> flags |= match(ua, i, "mobile", MOBILE) | match(ua, i, "mac os", MAC) | match(ua, i, "macintosh", MAC);
+                case 'o' -> flags |= match(ua, i, "opera", OPERA) | match(ua, i, "opr", OPERA);
+                case 's' -> flags |= match(ua, i, "safari", SAFARI);
+                case 't' -> flags |= match(ua, i, "tablet", TABLET);
+                case 'w' -> flags |= match(ua, i, "windows", WINDOWS);
+                default -> {
+                }
+            }
+        }
+        return flags;
+    }
+
+    // The caller has matched the first character already; tokens are lowercase ASCII
+    private static int match(String ua, int offset, String token, int flag) {
+        int length = token.length();
+        if (offset + length > ua.length()) {
+            return 0;
+        }
+        for (int i = 1; i < length; i++) {
+            if (toLowerAscii(ua.charAt(offset + i)) != token.charAt(i)) {
+                return 0;
+            }
+        }
+        return flag;
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static Classification toClassification(int flags) {
+        return new Classification(deviceType(flags), browser(flags), operatingSystem(flags));
+    }
+
+    private static String deviceType(int flags) {
+        if (has(flags, MOBILE) || (has(flags, ANDROID) && !has(flags, TABLET))) {
+            return "Mobile";
+        } else if (has(flags, TABLET) || has(flags, IPAD)) {
+            return "Tablet";
+        } else {
+            return "Desktop";
+        }
+    }
+
+    private static String browser(int flags) {
+        if (has(flags, EDGE)) {
+            return "Edge";
+        } else if (has(flags, OPERA)) {
+            return "Opera";
+        } else if (has(flags, CHROME)) {
+            return "Chrome";
+        } else if (has(flags, FIREFOX)) {
+            return "Firefox";
+        } else if (has(flags, SAFARI)) {
+            return "Safari";
+        } else {
+            return "Other";
+        }
+    }
+
+    private static String operatingSystem(int flags) {
+        if (has(flags, WINDOWS)) {
+            return "Windows";
+        } else if (has(flags, MAC)) {
+            return "macOS";
+        } else if (has(flags, LINUX) && !has(flags, ANDROID)) {
+            return "Linux";
+        } else if (has(flags, ANDROID)) {
+            return "Android";
+        } else if (has(flags, IPHONE) || has(flags, IPAD) || has(flags, IOS)) {
+            return "iOS";
+        } else {
+            return "Other";
+        }
+    }
+
+    private static boolean has(int flags, int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public record Classification(String deviceType, String browser, String operatingSystem) {
+    }
+}
@@ -0,0 +1,197 @@
+package com.urlshortener.analytics;
+
+import com.urlshortener.repository.VisitorSketchRepository;
+import com.urlshortener.repository.VisitorSketchRepository.Key;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts unique visitors per url with HyperLogLog sketches of client IPs, one for all time and
+ * one per day. Ingested clicks update in-memory sketches that are merged into the stored ones
+ * every few seconds. Estimates are within about 0.81% of the true count (one standard error).
+ *
+ * <p>Merging a sketch twice changes nothing, so a failed flush is simply retried, and clicks
+ * replayed from the click log are not counted twice. Multi-day and multi-url counts merge the
+ * matching sketches. Until the backfill has sketched clicks recorded before sketches existed,
+ * {@link #isReady()} is false and callers should count from the raw clicks instead.
+ */
+@Slf4j
+@Component
+public class VisitorSketches {
+
+    private final VisitorSketchRepository visitorSketchRepository;
+    private final ClickColumnBackfill clickColumnBackfill;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int backfillChunkSize;
+    private final ConcurrentHashMap<Key, HyperLogLog> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    public VisitorSketches(VisitorSketchRepository visitorSketchRepository,
+                           ClickColumnBackfill clickColumnBackfill,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.analytics.visitor-sketches.enabled:true}") boolean enabled,
+                           @Value("${app.analytics.visitor-sketches.backfill.chunk-size:50000}") int backfillChunkSize) {
+        this.visitorSketchRepository = visitorSketchRepository;
+        this.clickColumnBackfill = clickColumnBackfill;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.backfillChunkSize = backfillChunkSize;
+        Gauge.builder("clicks.visitor_sketches.pending", pending, Map::size)
+                .description("Visitor sketches with updates not yet merged into the database")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ipAddress is the canonical 16-byte form, so every spelling of an address counts once
+    public void add(long urlId, LocalDateTime clickedAt, byte[] ipAddress) {
+        if (!enabled || ipAddress == null) {
+            return;
+        }
+        add(pending, urlId, clickedAt, ipAddress);
+    }
+
+    public long countUniqueVisitors(Collection<Long> urlIds) {
+        HyperLogLog merged = new HyperLogLog();
+        for (byte[] sketch : visitorSketchRepository.findSketches(urlIds)) {
+            merged.merge(HyperLogLog.fromBytes(sketch));
+        }
+        for (Long urlId : urlIds) {
+            mergePending(merged, new Key(urlId, null));
+        }
+        return merged.estimate();
+    }
+
+    // Visitors on any day from 'from' to 'to', both inclusive
+    public long countUniqueVisitors(Collection<Long> urlIds, LocalDate from, LocalDate to) {
+        HyperLogLog merged = new HyperLogLog();
+        for (byte[] sketch : visitorSketchRepository.findDailySketches(urlIds, from, to)) {
+            merged.merge(HyperLogLog.fromBytes(sketch));
+        }
+        for (Long urlId : urlIds) {
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                mergePending(merged, new Key(urlId, day));
+            }
+        }
+        return merged.estimate();
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.visitor-sketches.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Key, HyperLogLog> batch = new HashMap<>();
+        for (Key key : pending.keySet()) {
+            HyperLogLog sketch = pending.remove(key);
+            if (sketch != null) {
+                batch.put(key, sketch);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> mergeIntoDatabase(batch));
+            log.debug("Merged {} visitor sketches", batch.size());
+        } catch (RuntimeException e) {
+            // Merging is idempotent, so putting the sketches back and retrying next run is always safe
+            batch.forEach((key, sketch) -> pending.merge(key, sketch, (current, failed) -> {
+                current.merge(failed);
+                return current;
+            }));
+            log.error("Failed to merge {} visitor sketches, will retry", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.warn("Shutting down with {} visitor sketches not merged", pending.size());
+        }
+    }
+
+    // One chunk per run, so a long backfill never holds a scheduler thread for more than one transaction.
+    // Waits for ip_bytes to be filled in, since clicks without it would go unsketched
+    @Scheduled(fixedDelayString = "${app.analytics.visitor-sketches.backfill.interval-ms:1000}")
+    public void backfill() {
+        if (!enabled || ready || !clickColumnBackfill.isReady()) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillChunk()))) {
+                ready = true;
+            }
+        } catch (RuntimeException e) {
+            log.error("Visitor sketch backfill failed, will retry", e);
+        }
+    }
+
+    // One chunk per transaction; the progress row lock keeps other instances from sketching the same clicks
+    private boolean backfillChunk() {
+        long[] progress = visitorSketchRepository.lockBackfillProgress();
+        long lastClickId = progress[0];
+        long targetClickId = progress[1];
+        if (lastClickId >= targetClickId) {
+            return true;
+        }
+        long toClickId = Math.min(targetClickId, lastClickId + backfillChunkSize);
+        Map<Key, HyperLogLog> sketches = new HashMap<>();
+        visitorSketchRepository.forEachClick(lastClickId, toClickId, rs -> add(sketches,
+                rs.getLong(1), rs.getTimestamp(2).toLocalDateTime(), rs.getBytes(3)));
+        mergeIntoDatabase(sketches);
+        visitorSketchRepository.updateBackfillProgress(toClickId);
+        log.info("Sketched visitors of clicks {} to {} of {}", lastClickId + 1, toClickId, targetClickId);
+        return toClickId >= targetClickId;
+    }
+
+    private void mergeIntoDatabase(Map<Key, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        Map<Key, byte[]> stored = visitorSketchRepository.lockSketches(sketches.keySet());
+        Map<Key, byte[]> merged = new HashMap<>();
+        for (Map.Entry<Key, HyperLogLog> entry : sketches.entrySet()) {
+            HyperLogLog sketch = HyperLogLog.fromBytes(stored.get(entry.getKey()));
+            sketch.merge(entry.getValue());
+            merged.put(entry.getKey(), sketch.toBytes());
+        }
+        visitorSketchRepository.updateSketches(merged);
+    }
+
+    // Copies under the map's bin lock so a concurrent add can't be observed half-applied
+    private void mergePending(HyperLogLog target, Key key) {
+        pending.computeIfPresent(key, (k, sketch) -> {
+            target.merge(sketch);
+            return sketch;
+        });
+    }
+
+    private static void add(Map<Key, HyperLogLog> sketches, long urlId, LocalDateTime clickedAt, byte[] ipAddress) {
+        for (Key key : List.of(new Key(urlId, null), new Key(urlId, clickedAt.toLocalDate()))) {
+            sketches.compute(key, (k, sketch) -> {
+                HyperLogLog updated = sketch != null ? sketch : new HyperLogLog();
+                updated.add(ipAddress);
+                return updated;
+            });
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.urlshortener.cache;
+
+// Identifies one analytics computation, so concurrent requests for the same url and days share it
+public record AnalyticsKey(long urlId, int days) {
+}
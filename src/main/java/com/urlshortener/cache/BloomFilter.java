@@ -0,0 +1,103 @@
+package com.urlshortener.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free Bloom filter over string keys, sized for an expected number of insertions and
+ * a target false-positive rate. Bits are only ever set, so readers never need a lock.
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int wordCount = Math.toIntExact(Math.max(1, (optimalBits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN2));
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(h1, h2, i);
+            int wordIndex = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(wordIndex);
+            while ((word & mask) == 0) {
+                long witness = words.compareAndExchange(wordIndex, word, word | mask);
+                if (witness == word) {
+                    break;
+                }
+                word = witness;
+            }
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(h1, h2, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long insertions() {
+        return insertions.sum();
+    }
+
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    // Expected false-positive rate for the number of keys inserted so far
+    public double expectedFalsePositiveRate() {
+        double fillRatio = 1 - Math.exp(-hashCount * (double) insertions.sum() / bitCount);
+        return Math.pow(fillRatio, hashCount);
+    }
+
+    private long bitIndex(int h1, int h2, int i) {
+        int combined = h1 + i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % bitCount;
+    }
+
+    // FNV-1a over the UTF-16 chars, finished with the MurmurHash3 64-bit mixer
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,116 @@
+package com.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.urlshortener.config.CacheConfig;
+import com.urlshortener.repository.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class RedirectCacheWarmer {
+
+    private final UrlRepository urlRepository;
+    private final CacheManager cacheManager;
+    private final boolean enabled;
+    private final int topN;
+    private final int batchSize;
+    private final Duration timeBudget;
+    private final TransactionTemplate readOnly;
+
+    public RedirectCacheWarmer(UrlRepository urlRepository,
+                               CacheManager cacheManager,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${app.cache.urls.warm-up.enabled:false}") boolean enabled,
+                               @Value("${app.cache.urls.warm-up.top-n:10000}") int topN,
+                               @Value("${app.cache.urls.warm-up.batch-size:500}") int batchSize,
+                               @Value("${app.cache.urls.warm-up.time-budget:30s}") Duration timeBudget) {
+        this.urlRepository = urlRepository;
+        this.cacheManager = cacheManager;
+        this.enabled = enabled;
+        this.topN = topN;
+        this.batchSize = batchSize;
+        this.timeBudget = timeBudget;
+        // Postgres only streams through a cursor inside a transaction
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    // Runs synchronously from the ApplicationReadyEvent listener, so readiness is only reported once it returns
+    public void warmUp() {
+        if (!enabled || topN <= 0) {
+            return;
+        }
+        if (!(cacheManager.getCache(CacheConfig.URLS_CACHE) instanceof CaffeineCache urlCache)) {
+            log.warn("Skipping redirect cache warm-up: '{}' is not a Caffeine cache", CacheConfig.URLS_CACHE);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + timeBudget.toNanos();
+        WarmUp warmUp;
+        try {
+            warmUp = readOnly.execute(status -> load(urlCache.getNativeCache(), deadline, status));
+        } catch (RuntimeException e) {
+            log.error("Redirect cache warm-up failed", e);
+            return;
+        }
+
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+        if (warmUp.budgetExhausted()) {
+            log.warn("Redirect cache warm-up stopped at time budget of {} with {} of up to {} entries loaded",
+                    timeBudget, warmUp.loaded(), topN);
+        } else {
+            log.info("Redirect cache warmed with {} entries in {} ms", warmUp.loaded(), elapsedMs);
+        }
+    }
+
+    private WarmUp load(Cache<Object, Object> cache, long deadline, TransactionStatus status) {
+        // ORDER BY click_count has no index to walk, so the top-N sort reads all of urls before the first row;
+        // the query timeout bounds that part and the per-row check the rest
+        long timeoutSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime() + 999_999_999));
+        Map<Object, Object> batch = new HashMap<>(batchSize * 2);
+        int loaded = 0;
+        try (Stream<Object[]> rows = urlRepository.streamMostClickedActiveUrls(
+                LocalDateTime.now(), topN, batchSize, (int) Math.min(timeoutSeconds, Integer.MAX_VALUE))) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                if (System.nanoTime() - deadline > 0) {
+                    return new WarmUp(loaded + batch.size(), true);
+                }
+                Object[] row = iterator.next();
+                batch.put(row[0], new RedirectTarget((Long) row[1], (String) row[2], (LocalDateTime) row[3], true));
+                if (batch.size() >= batchSize) {
+                    cache.putAll(batch);
+                    loaded += batch.size();
+                    batch.clear();
+                }
+            }
+            return new WarmUp(loaded + batch.size(), false);
+        } catch (QueryTimeoutException e) {
+            // The cancelled statement has aborted the transaction, which can no longer commit
+            status.setRollbackOnly();
+            return new WarmUp(loaded + batch.size(), true);
+        } finally {
+            cache.putAll(batch);
+        }
+    }
+
+    private record WarmUp(int loaded, boolean budgetExhausted) {
+    }
+}
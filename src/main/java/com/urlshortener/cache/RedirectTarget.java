@@ -0,0 +1,17 @@
+package com.urlshortener.cache;
+
+import com.urlshortener.repository.UrlLookup;
+
+import java.time.LocalDateTime;
+
+// Value held in the "urls" cache; expiry is checked on every read rather than trusted from load time
+public record RedirectTarget(long urlId, String originalUrl, LocalDateTime expiresAt, boolean active) {
+
+    public static RedirectTarget from(UrlLookup lookup) {
+        return new RedirectTarget(lookup.id(), lookup.originalUrl(), lookup.expiresAt(), lookup.active());
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return expiresAt != null && now.isAfter(expiresAt);
+    }
+}
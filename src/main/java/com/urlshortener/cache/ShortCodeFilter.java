@@ -0,0 +1,197 @@
+package com.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.urlshortener.repository.UrlRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Answers lookups for unknown short codes without a query per code: a Bloom filter of every short
+ * code, refreshed from the database every few seconds, and a cache of codes a lookup found missing.
+ *
+ * <p>Either may be behind codes that other instances created since the last refresh. So a code
+ * is only reported missing once a refresh that started after the question has run. Concurrent
+ * questions share one refresh, which scans just the recently created codes.
+ */
+@Slf4j
+@Component
+public class ShortCodeFilter {
+
+    private final UrlRepository urlRepository;
+    private final TransactionTemplate readOnly;
+    private final boolean enabled;
+    private final BloomFilter bloomFilter;
+    private final Cache<String, Boolean> missingCodes;
+    private final Counter bloomRejections;
+    private final Counter negativeCacheRejections;
+    private final Duration refreshOverlap;
+
+    private volatile boolean ready;
+    private volatile long refreshesStarted;
+    private long rescanAfterId;
+
+    public ShortCodeFilter(UrlRepository urlRepository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.cache.short-code-filter.enabled:true}") boolean enabled,
+                           @Value("${app.cache.short-code-filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${app.cache.short-code-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${app.cache.missing-urls.max-size:100000}") long missingMaxSize,
+                           @Value("${app.cache.missing-urls.ttl:30s}") Duration missingTtl,
+                           @Value("${app.cache.short-code-filter.refresh-overlap:60s}") Duration refreshOverlap) {
+        this.urlRepository = urlRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.enabled = enabled;
+        this.refreshOverlap = refreshOverlap;
+        this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.missingCodes = Caffeine.newBuilder()
+                .maximumSize(missingMaxSize)
+                .expireAfterWrite(missingTtl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, missingCodes, "missingUrls");
+        Gauge.builder("urls.short_code_filter.expected_fpp", bloomFilter, BloomFilter::expectedFalsePositiveRate)
+                .description("Expected false-positive rate of the short code Bloom filter")
+                .register(meterRegistry);
+        Gauge.builder("urls.short_code_filter.memory", bloomFilter, BloomFilter::sizeInBytes)
+                .description("Memory held by the short code Bloom filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("urls.short_code_filter.entries", bloomFilter, BloomFilter::insertions)
+                .description("Short codes inserted into the Bloom filter")
+                .register(meterRegistry);
+        this.bloomRejections = Counter.builder("urls.lookup.rejected")
+                .description("Redirect lookups answered as missing without a database query")
+                .tag("source", "bloom_filter")
+                .register(meterRegistry);
+        this.negativeCacheRejections = Counter.builder("urls.lookup.rejected")
+                .description("Redirect lookups answered as missing without a database query")
+                .tag("source", "negative_cache")
+                .register(meterRegistry);
+
+        log.info("Short code filter {} (bloom: {} bytes for {} codes at {} fpp, missing-code ttl: {})",
+                enabled ? "enabled" : "disabled", bloomFilter.sizeInBytes(), expectedInsertions,
+                falsePositiveRate, missingTtl);
+    }
+
+    public boolean isDefinitelyMissing(String shortCode) {
+        if (!enabled || !ready || !looksMissing(shortCode)) {
+            return false;
+        }
+        // The code may have been created on another instance since the last refresh
+        long requestedAfter = refreshesStarted;
+        try {
+            refreshIfNoneStartedSince(requestedAfter);
+        } catch (RuntimeException e) {
+            log.warn("Short code filter refresh failed, looking up {} in the database: {}", shortCode, e.getMessage());
+            return false;
+        }
+        if (!bloomFilter.mightContain(shortCode)) {
+            bloomRejections.increment();
+            return true;
+        }
+        if (missingCodes.getIfPresent(shortCode) != null) {
+            negativeCacheRejections.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean looksMissing(String shortCode) {
+        return !bloomFilter.mightContain(shortCode) || missingCodes.getIfPresent(shortCode) != null;
+    }
+
+    public void markMissing(String shortCode) {
+        if (enabled) {
+            missingCodes.put(shortCode, Boolean.TRUE);
+        }
+    }
+
+    public void markCreated(String shortCode) {
+        if (!enabled) {
+            return;
+        }
+        bloomFilter.put(shortCode);
+        missingCodes.invalidate(shortCode);
+
+        // A lookup racing the insert may re-cache the code as missing before the row is visible
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    missingCodes.invalidate(shortCode);
+                }
+            });
+        }
+    }
+
+    // First run builds the filter from every existing short code; later runs pick up codes created by other instances,
+    // and drop them from the missing codes.
+    @Scheduled(fixedDelayString = "${app.cache.short-code-filter.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (enabled) {
+            refreshIfNoneStartedSince(refreshesStarted);
+        }
+    }
+
+    // A refresh that started after the caller's read of refreshesStarted sees every code committed before it;
+    // callers that wait for the lock while one runs are answered by it
+    private synchronized void refreshIfNoneStartedSince(long started) {
+        if (refreshesStarted == started) {
+            refreshesStarted++;
+            readOnly.executeWithoutResult(status -> scanNewCodes());
+        }
+    }
+
+    // Ids are assigned at insert but become visible at commit, so a code can appear below ids already seen. Each run
+    // therefore rescans from just before the first code younger than the overlap, which catches any insert that
+    // commits within the overlap of being created.
+    private void scanNewCodes() {
+        LocalDateTime settledBefore = LocalDateTime.now().minus(refreshOverlap);
+        long nextRescanAfterId = rescanAfterId;
+        boolean settled = true;
+        long scanned = 0;
+        long added = 0;
+        try (Stream<Object[]> rows = urlRepository.streamShortCodesAfter(rescanAfterId)) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                String shortCode = (String) row[1];
+                if (!bloomFilter.mightContain(shortCode)) {
+                    bloomFilter.put(shortCode);
+                    added++;
+                }
+                missingCodes.invalidate(shortCode);
+                settled = settled && ((LocalDateTime) row[2]).isBefore(settledBefore);
+                if (settled) {
+                    nextRescanAfterId = (Long) row[0];
+                }
+                scanned++;
+            }
+        }
+        rescanAfterId = nextRescanAfterId;
+
+        if (!ready) {
+            ready = true;
+            log.info("Short code Bloom filter built with {} codes (expected fpp: {})",
+                    scanned, String.format("%.5f", bloomFilter.expectedFalsePositiveRate()));
+        } else if (added > 0) {
+            log.debug("Added {} short codes to Bloom filter", added);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.urlshortener.cache;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader and everyone
+ * arriving while it is in flight waits for that result instead of loading again.
+ */
+@Slf4j
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration maxWait;
+    private final Counter coalescedCalls;
+    private final Counter waitTimeouts;
+
+    public SingleFlight(Duration maxWait, Counter coalescedCalls, Counter waitTimeouts) {
+        this.maxWait = maxWait;
+        this.coalescedCalls = coalescedCalls;
+        this.waitTimeouts = waitTimeouts;
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(key, existing, loader);
+        }
+
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(K key, CompletableFuture<V> leader, Supplier<V> loader) {
+        coalescedCalls.increment();
+        try {
+            return leader.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Coalesced load failed for key: " + key, e.getCause());
+        } catch (TimeoutException e) {
+            // Don't hang behind a stuck leader forever; fall back to loading on this thread
+            waitTimeouts.increment();
+            log.warn("Coalesced load for key {} exceeded {} ms, loading directly", key, maxWait.toMillis());
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for load of key: " + key, e);
+        }
+    }
+}
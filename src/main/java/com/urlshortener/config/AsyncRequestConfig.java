@@ -0,0 +1,39 @@
+package com.urlshortener.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Streams async responses, which here are the click exports, on threads of their own instead of
+ * the shared task executor, so long exports can't starve other async work. ClickExportService
+ * admits at most max-concurrent exports; the queue only absorbs the moment between one export
+ * giving back its slot and its thread becoming free.
+ */
+@Configuration
+public class AsyncRequestConfig implements WebMvcConfigurer {
+
+    // Not a bean: an Executor bean would replace the auto-configured shared task executor
+    private final ThreadPoolTaskExecutor exportExecutor = new ThreadPoolTaskExecutor();
+
+    public AsyncRequestConfig(@Value("${app.analytics.export.max-concurrent:4}") int maxConcurrent) {
+        exportExecutor.setCorePoolSize(maxConcurrent);
+        exportExecutor.setMaxPoolSize(maxConcurrent);
+        exportExecutor.setQueueCapacity(maxConcurrent);
+        exportExecutor.setThreadNamePrefix("click-export-");
+        exportExecutor.initialize();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(exportExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        exportExecutor.shutdown();
+    }
+}
@@ -0,0 +1,140 @@
+package com.urlshortener.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.urlshortener.cache.AnalyticsKey;
+import com.urlshortener.cache.RedirectTarget;
+import com.urlshortener.cache.SingleFlight;
+import com.urlshortener.dto.AnalyticsResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@Slf4j
+@Configuration
+public class CacheConfig {
+
+    public static final String URLS_CACHE = "urls";
+    public static final String ANALYTICS_CACHE = "analytics";
+
+    // Rough per-entry cost of the key, value and Caffeine node beyond the raw characters
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    @Value("${app.cache.urls.max-weight-bytes:67108864}")
+    private long urlsMaxWeightBytes;
+
+    @Value("${app.cache.urls.ttl:1h}")
+    private Duration urlsTtl;
+
+    @Value("${app.cache.urls.load-timeout:2s}")
+    private Duration urlsLoadTimeout;
+
+    @Value("${app.cache.analytics.max-size:10000}")
+    private long analyticsMaxSize;
+
+    @Value("${app.cache.analytics.ttl:5s}")
+    private Duration analyticsTtl;
+
+    @Value("${app.cache.analytics.load-timeout:10s}")
+    private Duration analyticsLoadTimeout;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(URLS_CACHE, Caffeine.newBuilder()
+                // Size-bounded Caffeine caches use W-TinyLFU admission, so one-hit scans can't flush hot links
+                .maximumWeight(urlsMaxWeightBytes)
+                .weigher((Object key, Object value) -> weighUrlEntry(key, value))
+                .expireAfter(new UrlEntryExpiry(urlsTtl))
+                .recordStats()
+                .build());
+
+        // Keyed by url id, each value holding that url's responses by days, so new clicks evict a url in one step.
+        // Responses added to a url's map later expire with it, never after the TTL
+        cacheManager.registerCustomCache(ANALYTICS_CACHE, Caffeine.newBuilder()
+                .maximumSize(analyticsMaxSize)
+                .expireAfterWrite(analyticsTtl)
+                .recordStats()
+                .build());
+
+        log.info("Configured '{}' cache (max weight: {} bytes, ttl: {})", URLS_CACHE, urlsMaxWeightBytes, urlsTtl);
+        log.info("Configured '{}' cache (max urls: {}, ttl: {})", ANALYTICS_CACHE, analyticsMaxSize, analyticsTtl);
+        return cacheManager;
+    }
+
+    @Bean
+    public SingleFlight<String, RedirectTarget> redirectTargetLoads(MeterRegistry meterRegistry) {
+        Counter coalesced = Counter.builder("urls.cache.coalesced")
+                .description("Redirect cache misses served by another caller's in-flight load")
+                .register(meterRegistry);
+        Counter timeouts = Counter.builder("urls.cache.coalesce.timeouts")
+                .description("Coalesced callers that gave up waiting and loaded directly")
+                .register(meterRegistry);
+        SingleFlight<String, RedirectTarget> loads = new SingleFlight<>(urlsLoadTimeout, coalesced, timeouts);
+        Gauge.builder("urls.cache.loads.in_flight", loads, SingleFlight::inFlightCount)
+                .description("Redirect cache loads currently running")
+                .register(meterRegistry);
+        return loads;
+    }
+
+    @Bean
+    public SingleFlight<AnalyticsKey, AnalyticsResponse> analyticsLoads(MeterRegistry meterRegistry) {
+        Counter coalesced = Counter.builder("analytics.cache.coalesced")
+                .description("Analytics requests served by another caller's in-flight computation")
+                .register(meterRegistry);
+        Counter timeouts = Counter.builder("analytics.cache.coalesce.timeouts")
+                .description("Coalesced analytics requests that gave up waiting and computed directly")
+                .register(meterRegistry);
+        SingleFlight<AnalyticsKey, AnalyticsResponse> loads = new SingleFlight<>(analyticsLoadTimeout, coalesced, timeouts);
+        Gauge.builder("analytics.cache.loads.in_flight", loads, SingleFlight::inFlightCount)
+                .description("Analytics computations currently running")
+                .register(meterRegistry);
+        return loads;
+    }
+
+    private static int weighUrlEntry(Object key, Object value) {
+        int weight = ENTRY_OVERHEAD_BYTES + key.toString().length();
+        if (value instanceof RedirectTarget target) {
+            weight += target.originalUrl().length();
+        }
+        return weight;
+    }
+
+    private record UrlEntryExpiry(Duration ttl) implements Expiry<Object, Object> {
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return timeToLive(value);
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return timeToLive(value);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        // Links expiring before the TTL leave the cache at their expiry; already expired ones stay cached as such
+        private long timeToLive(Object value) {
+            if (value instanceof RedirectTarget target && target.active() && target.expiresAt() != null) {
+                Duration untilExpiry = Duration.between(LocalDateTime.now(), target.expiresAt());
+                if (!untilExpiry.isNegative() && untilExpiry.compareTo(ttl) < 0) {
+                    return untilExpiry.toNanos();
+                }
+            }
+            return ttl.toNanos();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.urlshortener.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+/**
+ * Small connection pools to the main database beside the auto-configured one, for work that
+ * must neither wait for nor hold connections of the main pool. Their owners close them. They are
+ * never beans: a second DataSource bean would turn off the auto-configured main one.
+ */
+public final class DedicatedDataSources {
+
+    private DedicatedDataSources() {
+    }
+
+    public static HikariDataSource create(DataSourceProperties properties, String poolName, int maximumPoolSize,
+                                          MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(poolName);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setMinimumIdle(0);
+        dataSource.setMetricRegistry(meterRegistry);
+        return dataSource;
+    }
+}
@@ -1,6 +1,7 @@
 package com.urlshortener.config;
 
 import com.urlshortener.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -54,6 +55,9 @@ public class SecurityConfig {
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
                 .authorizeHttpRequests(auth -> auth
+                        // Async dispatches resume requests already authorized, e.g. when a click export stream completes
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // Public endpoints
                         .requestMatchers("/auth/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/r/**").permitAll()  // Redirect endpoint
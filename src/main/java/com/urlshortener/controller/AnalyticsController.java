@@ -2,15 +2,21 @@ package com.urlshortener.controller;
 
 import com.urlshortener.dto.AnalyticsResponse;
 import com.urlshortener.dto.ApiResponse;
+import com.urlshortener.entity.Url;
 import com.urlshortener.security.CustomUserDetails;
 import com.urlshortener.service.AnalyticsService;
+import com.urlshortener.service.ClickExportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import jakarta.validation.constraints.Max;
@@ -20,6 +26,9 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
 
 @Slf4j
 @RestController
@@ -31,6 +40,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final ClickExportService clickExportService;
 
     @GetMapping("/{shortCode:[A-Za-z0-9]+}")
     @Operation(summary = "Get analytics for a URL", description = "Returns detailed click analytics for a shortened URL")
@@ -46,4 +56,31 @@ public class AnalyticsController {
                 analytics.getTotalClicks(), analytics.getUniqueVisitors());
         return ResponseEntity.ok(ApiResponse.success(analytics));
     }
+
+    @GetMapping("/{shortCode:[A-Za-z0-9]+}/export")
+    @Operation(summary = "Export raw clicks", description = "Streams every click of a shortened URL as NDJSON or CSV, oldest first")
+    public ResponseEntity<StreamingResponseBody> exportClicks(
+            @Parameter(description = "The short code of the URL") @PathVariable String shortCode,
+            @Parameter(description = "Output format: ndjson or csv (default: ndjson)")
+            @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Only clicks at or after this time (ISO date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only clicks before this time (ISO date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Gzip-compress the file")
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+
+        log.info("User {} exporting clicks for shortCode: {} (format: {}, from: {}, to: {})",
+                userDetails.getUsername(), shortCode, format, from, to);
+        ClickExportService.Format exportFormat = ClickExportService.Format.parse(format);
+        Url url = clickExportService.prepareExport(shortCode, userDetails.toUser(), from, to);
+        long urlId = url.getId();
+        String filename = shortCode + "-clicks." + exportFormat.extension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> clickExportService.writeClicks(urlId, exportFormat, from, to, gzip, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.contentType()))
+                .body(body);
+    }
 }
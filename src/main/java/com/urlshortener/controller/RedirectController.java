@@ -1,6 +1,9 @@
 package com.urlshortener.controller;
 
-import com.urlshortener.service.AnalyticsService;
+import com.urlshortener.analytics.ClickEvent;
+import com.urlshortener.analytics.ClickIngestionPipeline;
+import com.urlshortener.analytics.IpAddresses;
+import com.urlshortener.cache.RedirectTarget;
 import com.urlshortener.service.UrlService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,6 +22,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
+import java.time.LocalDateTime;
 
 @Slf4j
 @RestController
@@ -28,7 +32,7 @@ import java.net.URI;
 public class RedirectController {
 
     private final UrlService urlService;
-    private final AnalyticsService analyticsService;
+    private final ClickIngestionPipeline clickIngestionPipeline;
 
     @GetMapping("/{shortCode:[A-Za-z0-9]+}")
     @Operation(summary = "Redirect to original URL", description = "Redirects to the original URL associated with the short code")
@@ -42,17 +46,19 @@ public class RedirectController {
 
         log.info("Redirect request for short code: {}", shortCode);
 
-        // Get the original URL (cached, validates active status and expiration)
-        String originalUrl = urlService.getOriginalUrl(shortCode);
+        // Resolve the target (cached, validates active status and expiration)
+        RedirectTarget target = urlService.resolveRedirect(shortCode);
 
-        // Record analytics asynchronously — lookup happens in background thread
-        String clientIp = getClientIpAddress(request);
-        String userAgent = request.getHeader("User-Agent");
-        String referer = request.getHeader("Referer");
-        analyticsService.recordClick(shortCode, clientIp, userAgent, referer);
+        // Queue the click for batched recording — the event carries the url id, so no lookup is needed
+        clickIngestionPipeline.submit(new ClickEvent(
+                target.urlId(),
+                LocalDateTime.now(),
+                getClientIpAddress(request),
+                request.getHeader("User-Agent"),
+                request.getHeader("Referer")));
 
         HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(URI.create(originalUrl));
+        headers.setLocation(URI.create(target.originalUrl()));
         headers.setCacheControl("no-cache, no-store, must-revalidate");
         headers.setPragma("no-cache");
         headers.setExpires(0);
@@ -68,9 +74,15 @@ public class RedirectController {
         };
 
         for (String header : headerNames) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
-                return ip.split(",")[0].trim();
+            String value = request.getHeader(header);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            // First hop only; "unknown" and other junk fall through to the next header
+            int comma = value.indexOf(',');
+            String ip = (comma < 0 ? value : value.substring(0, comma)).trim();
+            if (IpAddresses.isValid(ip)) {
+                return ip;
             }
         }
         return request.getRemoteAddr();
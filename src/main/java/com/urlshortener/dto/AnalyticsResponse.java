@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -15,7 +16,12 @@ import java.util.Map;
 public class AnalyticsResponse {
 
     private Long totalClicks;
+    // totalClicks minus clicks tagged as bots; the same as totalClicks when bots are dropped at ingest
+    private Long humanClicks;
+    // Unique visitors are HyperLogLog estimates, within about 0.81% of the exact count (one standard error)
     private Long uniqueVisitors;
+    private Long uniqueVisitorsLast7Days;
+    private Long uniqueVisitorsLast30Days;
     private Long clicksLast24Hours;
     private Long clicksLast7Days;
     private Long clicksLast30Days;
@@ -25,6 +31,8 @@ public class AnalyticsResponse {
     private List<StatEntry> topDevices;
     private List<StatEntry> topOperatingSystems;
     private List<StatEntry> topReferers;
+    // When these numbers were computed; responses are cached for up to app.cache.analytics.ttl
+    private LocalDateTime generatedAt;
 
     @Data
     @Builder
@@ -43,5 +51,7 @@ public class AnalyticsResponse {
         private String name;
         private Long count;
         private Double percentage;
+        // Set when count comes from a top value summary: the true count lies between count - maxError and count
+        private Long maxError;
     }
 }
@@ -1,11 +1,11 @@
 package com.urlshortener.entity;
 
+import com.urlshortener.repository.ClickAnalyticsRow;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
 
@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 @Table(name = "click_analytics", indexes = {
         @Index(name = "idx_click_analytics_clicked_at", columnList = "clicked_at"),
         @Index(name = "idx_click_analytics_url_clicked_at", columnList = "url_id, clicked_at"),
-        @Index(name = "idx_click_analytics_url_ip", columnList = "url_id, ip_address")
+        @Index(name = "idx_click_analytics_url_ip_bytes", columnList = "url_id, ip_bytes")
 })
 @Data
 @Builder
@@ -29,14 +29,19 @@ public class ClickAnalytics {
     @JoinColumn(name = "url_id", nullable = false)
     private Url url;
 
-    @Column(name = "ip_address", length = 45)
-    private String ipAddress;
+    // Canonical 16-byte address, IPv4 as IPv4-mapped IPv6; see IpAddresses
+    @Column(name = "ip_bytes", length = 16)
+    private byte[] ipBytes;
 
-    @Column(name = "user_agent", columnDefinition = "TEXT")
-    private String userAgent;
+    @Column(name = "user_agent_id")
+    private Integer userAgentId;
 
-    @Column(columnDefinition = "TEXT")
-    private String referer;
+    @Column(name = "referer_id")
+    private Integer refererId;
+
+    // Normalized host of the referer, which referer breakdowns group on; see RefererNormalizer
+    @Column(name = "referer_host_id")
+    private Integer refererHostId;
 
     @Column(length = 2)
     private String country;
@@ -44,16 +49,29 @@ public class ClickAnalytics {
     @Column(length = 100)
     private String city;
 
-    @Column(name = "device_type", length = 20)
-    private String deviceType;
+    @Column(name = "device_type_id")
+    private Integer deviceTypeId;
+
+    @Column(name = "browser_id")
+    private Integer browserId;
+
+    @Column(name = "os_id")
+    private Integer osId;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer weight = 1;
 
-    @Column(length = 50)
-    private String browser;
+    // Set for clicks BotDetector recognized as crawlers or link previews
+    @Column(name = "is_bot", nullable = false)
+    @Builder.Default
+    private Boolean bot = false;
 
-    @Column(length = 50)
-    private String os;
+    // Rows with an older version than ClickAnalyticsRow.WRITER_VERSION are queued for ClickCatchUp
+    @Column(name = "writer_version", nullable = false)
+    @Builder.Default
+    private Short writerVersion = ClickAnalyticsRow.WRITER_VERSION;
 
-    @CreationTimestamp
     @Column(name = "clicked_at", nullable = false, updatable = false)
     private LocalDateTime clickedAt;
 }
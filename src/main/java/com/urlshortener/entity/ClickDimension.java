@@ -0,0 +1,38 @@
+package com.urlshortener.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One distinct value of a low-information click column; click_analytics stores only the id
+@Entity
+@Table(name = "click_dimensions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_click_dimensions_value_md5", columnNames = {"dimension", "value_md5"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickDimension {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Dimension dimension;
+
+    @Column(name = "dimension_value", nullable = false, length = 2048)
+    private String value;
+
+    // MD5 of the UTF-8 value as 32 hex digits, which the unique index is on; long values would exceed a btree entry
+    @Column(name = "value_md5", nullable = false, length = 32)
+    private String valueMd5;
+
+    public enum Dimension {
+        DEVICE_TYPE, BROWSER, OS, REFERER, USER_AGENT, COUNTRY, REFERER_HOST
+    }
+}
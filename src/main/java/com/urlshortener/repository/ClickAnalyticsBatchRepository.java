@@ -0,0 +1,8 @@
+package com.urlshortener.repository;
+
+import java.util.List;
+
+public interface ClickAnalyticsBatchRepository {
+
+    void insertBatch(List<ClickAnalyticsRow> rows);
+}
@@ -0,0 +1,39 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+// With reWriteBatchedInserts the Postgres driver turns each JDBC batch into multi-row INSERTs
+@RequiredArgsConstructor
+public class ClickAnalyticsBatchRepositoryImpl implements ClickAnalyticsBatchRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO click_analytics "
+            + "(url_id, ip_bytes, user_agent_id, referer_id, referer_host_id, country, city, device_type_id, browser_id, os_id, clicked_at, weight, is_bot, writer_version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertBatch(List<ClickAnalyticsRow> rows) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.urlId());
+            ps.setBytes(2, row.ipAddress());
+            ps.setObject(3, row.userAgentId(), Types.INTEGER);
+            ps.setObject(4, row.refererId(), Types.INTEGER);
+            ps.setObject(5, row.refererHostId(), Types.INTEGER);
+            ps.setString(6, row.country());
+            ps.setString(7, row.city());
+            ps.setObject(8, row.deviceTypeId(), Types.INTEGER);
+            ps.setObject(9, row.browserId(), Types.INTEGER);
+            ps.setObject(10, row.osId(), Types.INTEGER);
+            ps.setTimestamp(11, Timestamp.valueOf(row.clickedAt()));
+            ps.setInt(12, row.weight());
+            ps.setBoolean(13, row.bot());
+            ps.setShort(14, ClickAnalyticsRow.WRITER_VERSION);
+        });
+    }
+}
@@ -13,38 +13,32 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface ClickAnalyticsRepository extends JpaRepository<ClickAnalytics, Long> {
+public interface ClickAnalyticsRepository extends JpaRepository<ClickAnalytics, Long>, ClickAnalyticsBatchRepository {
 
     Page<ClickAnalytics> findByUrlOrderByClickedAtDesc(Url url, Pageable pageable);
 
     List<ClickAnalytics> findByUrlAndClickedAtBetween(Url url, LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT c.country, COUNT(c) FROM ClickAnalytics c WHERE c.url = :url GROUP BY c.country ORDER BY COUNT(c) DESC")
-    List<Object[]> getCountryStats(@Param("url") Url url);
-
-    @Query("SELECT c.browser, COUNT(c) FROM ClickAnalytics c WHERE c.url = :url GROUP BY c.browser ORDER BY COUNT(c) DESC")
-    List<Object[]> getBrowserStats(@Param("url") Url url);
-
-    @Query("SELECT c.deviceType, COUNT(c) FROM ClickAnalytics c WHERE c.url = :url GROUP BY c.deviceType ORDER BY COUNT(c) DESC")
-    List<Object[]> getDeviceStats(@Param("url") Url url);
-
-    @Query("SELECT c.os, COUNT(c) FROM ClickAnalytics c WHERE c.url = :url GROUP BY c.os ORDER BY COUNT(c) DESC")
-    List<Object[]> getOsStats(@Param("url") Url url);
+    long countByUrl(Url url);
 
-    @Query("SELECT c.referer, COUNT(c) FROM ClickAnalytics c WHERE c.url = :url AND c.referer IS NOT NULL GROUP BY c.referer ORDER BY COUNT(c) DESC")
-    List<Object[]> getRefererStats(@Param("url") Url url);
+    @Query("SELECT COALESCE(SUM(c.weight), 0) FROM ClickAnalytics c WHERE c.clickedAt >= :startDate")
+    long countClicksSinceDate(@Param("startDate") LocalDateTime startDate);
 
-    @Query("SELECT CAST(c.clickedAt AS date), COUNT(c) FROM ClickAnalytics c WHERE c.url = :url AND c.clickedAt >= :startDate GROUP BY CAST(c.clickedAt AS date) ORDER BY CAST(c.clickedAt AS date)")
-    List<Object[]> getDailyClickStats(@Param("url") Url url, @Param("startDate") LocalDateTime startDate);
+    @Query("SELECT COALESCE(SUM(c.weight), 0) FROM ClickAnalytics c")
+    long sumClickWeights();
 
-    long countByUrl(Url url);
+    // Fallbacks until visitor sketches are ready, on the (url_id, ip_bytes) index
+    @Query("SELECT COUNT(DISTINCT c.ipBytes) FROM ClickAnalytics c WHERE c.url = :url")
+    long countUniqueVisitorsByUrl(@Param("url") Url url);
 
-    @Query("SELECT COUNT(c) FROM ClickAnalytics c WHERE c.url = :url AND c.clickedAt >= :startDate")
-    long countClicksSince(@Param("url") Url url, @Param("startDate") LocalDateTime startDate);
+    @Query("SELECT COUNT(DISTINCT c.ipBytes) FROM ClickAnalytics c WHERE c.url = :url AND c.clickedAt >= :startDate")
+    long countUniqueVisitorsSince(@Param("url") Url url, @Param("startDate") LocalDateTime startDate);
 
-    @Query("SELECT COUNT(c) FROM ClickAnalytics c WHERE c.clickedAt >= :startDate")
-    long countClicksSinceDate(@Param("startDate") LocalDateTime startDate);
+    // Clicks ClickColumnBackfill has yet to convert have only the text address, which converting clears
+    @Query(value = "SELECT COUNT(DISTINCT ip_address) FROM click_analytics WHERE url_id = :urlId", nativeQuery = true)
+    long countUnconvertedVisitorsByUrl(@Param("urlId") long urlId);
 
-    @Query("SELECT COUNT(DISTINCT c.ipAddress) FROM ClickAnalytics c WHERE c.url = :url")
-    long countUniqueVisitorsByUrl(@Param("url") Url url);
+    @Query(value = "SELECT COUNT(DISTINCT ip_address) FROM click_analytics WHERE url_id = :urlId AND clicked_at >= :startDate",
+            nativeQuery = true)
+    long countUnconvertedVisitorsSince(@Param("urlId") long urlId, @Param("startDate") LocalDateTime startDate);
 }
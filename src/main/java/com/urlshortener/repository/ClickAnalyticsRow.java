@@ -0,0 +1,25 @@
+package com.urlshortener.repository;
+
+import java.time.LocalDateTime;
+
+// Column values for one click_analytics insert, written in JDBC batches rather than as entities.
+// Dimension columns hold click_dimensions ids, and ipAddress is the canonical 16-byte address,
+// written to ip_bytes.
+public record ClickAnalyticsRow(
+        long urlId,
+        byte[] ipAddress,
+        Integer userAgentId,
+        Integer refererId,
+        Integer refererHostId,
+        String country,
+        String city,
+        Integer deviceTypeId,
+        Integer browserId,
+        Integer osId,
+        LocalDateTime clickedAt,
+        int weight,
+        boolean bot) {
+
+    // Written to writer_version; bumped by releases that derive more at ingest, together with the V13 trigger condition
+    public static final short WRITER_VERSION = 1;
+}
@@ -0,0 +1,91 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Plain JDBC over click_catch_up, the queue of clicks written by instances of an older release
+@Repository
+@RequiredArgsConstructor
+public class ClickCatchUpRepository {
+
+    // A LEFT JOIN, so queue entries of clicks whose partition has since been dropped are still found and removed.
+    // Older instances write text columns, read through to_jsonb so the query outlives the columns' drop
+    private static final String LOCK_QUEUED_SQL = "SELECT q.click_id, q.clicked_at, c.url_id, to_jsonb(c) ->> 'ip_address', c.ip_bytes, "
+            + "c.user_agent_id, c.referer_id, c.referer_host_id, COALESCE(r.dimension_value, to_jsonb(c) ->> 'referer'), "
+            + "c.country, c.city, c.device_type_id, c.browser_id, c.os_id, c.weight, c.is_bot, to_jsonb(c) ->> 'user_agent', "
+            + "to_jsonb(c) ->> 'device_type', to_jsonb(c) ->> 'browser', to_jsonb(c) ->> 'os' "
+            + "FROM click_catch_up q "
+            + "LEFT JOIN click_analytics c ON c.id = q.click_id AND c.clicked_at = q.clicked_at "
+            + "LEFT JOIN click_dimensions r ON r.id = c.referer_id "
+            + "ORDER BY q.click_id LIMIT ? FOR UPDATE OF q SKIP LOCKED";
+
+    private static final String UPDATE_CLICK_SQL = "UPDATE click_analytics SET ip_bytes = ?, referer_host_id = ?, "
+            + "user_agent_id = ?, referer_id = ?, device_type_id = ?, browser_id = ?, os_id = ?, writer_version = ? "
+            + "WHERE id = ? AND clicked_at = ?";
+
+    private static final String DELETE_QUEUED_SQL = "DELETE FROM click_catch_up WHERE click_id = ? AND clicked_at = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must run inside a transaction; other instances skip the locked entries and take the next ones
+    public List<QueuedClick> lockQueued(int limit) {
+        return jdbcTemplate.query(LOCK_QUEUED_SQL, (rs, rowNum) -> new QueuedClick(
+                rs.getLong(1),
+                rs.getTimestamp(2).toLocalDateTime(),
+                rs.getObject(3, Long.class),
+                rs.getString(4),
+                rs.getBytes(5),
+                rs.getObject(6, Integer.class),
+                rs.getObject(7, Integer.class),
+                rs.getObject(8, Integer.class),
+                rs.getString(9),
+                rs.getString(10),
+                rs.getString(11),
+                rs.getObject(12, Integer.class),
+                rs.getObject(13, Integer.class),
+                rs.getObject(14, Integer.class),
+                rs.getInt(15),
+                rs.getBoolean(16),
+                rs.getString(17),
+                rs.getString(18),
+                rs.getString(19),
+                rs.getString(20)), limit);
+    }
+
+    // Stores the derived columns of caught-up clicks and takes every locked entry off the queue
+    public void complete(List<CaughtUpClick> clicks, List<QueuedClick> queued) {
+        jdbcTemplate.batchUpdate(UPDATE_CLICK_SQL, clicks, 1000, (ps, click) -> {
+            ps.setBytes(1, click.row().ipAddress());
+            ps.setObject(2, click.row().refererHostId(), Types.INTEGER);
+            ps.setObject(3, click.row().userAgentId(), Types.INTEGER);
+            ps.setObject(4, click.row().refererId(), Types.INTEGER);
+            ps.setObject(5, click.row().deviceTypeId(), Types.INTEGER);
+            ps.setObject(6, click.row().browserId(), Types.INTEGER);
+            ps.setObject(7, click.row().osId(), Types.INTEGER);
+            ps.setShort(8, ClickAnalyticsRow.WRITER_VERSION);
+            ps.setLong(9, click.clickId());
+            ps.setTimestamp(10, Timestamp.valueOf(click.row().clickedAt()));
+        });
+        jdbcTemplate.batchUpdate(DELETE_QUEUED_SQL, queued, 1000, (ps, click) -> {
+            ps.setLong(1, click.clickId());
+            ps.setTimestamp(2, Timestamp.valueOf(click.clickedAt()));
+        });
+    }
+
+    // urlId is null when the click itself is gone; ids and ipBytes are null when the writer didn't derive them, and
+    // the text values are null when it did
+    public record QueuedClick(long clickId, LocalDateTime clickedAt, Long urlId, String ipAddress, byte[] ipBytes,
+                              Integer userAgentId, Integer refererId, Integer refererHostId, String referer,
+                              String country, String city, Integer deviceTypeId, Integer browserId, Integer osId,
+                              int weight, boolean bot, String userAgent, String deviceType, String browser, String os) {
+    }
+
+    public record CaughtUpClick(long clickId, ClickAnalyticsRow row) {
+    }
+}
@@ -0,0 +1,99 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+// Plain JDBC for converting click_analytics columns of clicks written before the columns' current form existed
+@Repository
+@RequiredArgsConstructor
+public class ClickColumnBackfillRepository {
+
+    private static final String LOCK_BACKFILL_SQL = "SELECT last_click_id, target_click_id, completed_at, text_columns_dropped "
+            + "FROM click_column_backfill WHERE id = 1 FOR UPDATE";
+
+    // Clicks holding a text value still to convert, or a referer id without its host
+    private static final String FIND_CLICKS_SQL = "SELECT c.id, c.clicked_at, c.ip_address, c.ip_bytes, "
+            + "c.referer_id, c.referer_host_id, COALESCE(r.dimension_value, c.referer), "
+            + "c.user_agent_id, c.user_agent, c.device_type_id, c.device_type, c.browser_id, c.browser, c.os_id, c.os "
+            + "FROM click_analytics c LEFT JOIN click_dimensions r ON r.id = c.referer_id "
+            + "WHERE c.id > ? AND c.id <= ? "
+            + "AND (c.ip_address IS NOT NULL OR c.user_agent IS NOT NULL OR c.referer IS NOT NULL "
+            + "OR c.device_type IS NOT NULL OR c.browser IS NOT NULL OR c.os IS NOT NULL "
+            + "OR (c.referer_host_id IS NULL AND c.referer_id IS NOT NULL))";
+
+    // clicked_at is the partition key, so each update touches only the click's own partition. The text values go, so
+    // clicks keep their address only in the truncated form ip_bytes has
+    private static final String UPDATE_CLICK_SQL = "UPDATE click_analytics SET ip_bytes = ?, referer_host_id = ?, "
+            + "referer_id = ?, user_agent_id = ?, device_type_id = ?, browser_id = ?, os_id = ?, "
+            + "ip_address = NULL, user_agent = NULL, referer = NULL, device_type = NULL, browser = NULL, os = NULL "
+            + "WHERE id = ? AND clicked_at = ?";
+
+    private static final String DROP_TEXT_COLUMNS_SQL = "ALTER TABLE click_analytics "
+            + "DROP COLUMN IF EXISTS ip_address, DROP COLUMN IF EXISTS user_agent, DROP COLUMN IF EXISTS referer, "
+            + "DROP COLUMN IF EXISTS device_type, DROP COLUMN IF EXISTS browser, DROP COLUMN IF EXISTS os";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must run inside a transaction; holds the backfill row lock until it ends
+    public Progress lockBackfillProgress() {
+        return jdbcTemplate.queryForObject(LOCK_BACKFILL_SQL, (rs, rowNum) -> new Progress(
+                rs.getLong(1), rs.getLong(2), rs.getTimestamp(3), rs.getBoolean(4)));
+    }
+
+    // Rows of (id, clicked_at, ip_address, ip_bytes, referer_id, referer_host_id, referer, user_agent_id, user_agent,
+    // device_type_id, device_type, browser_id, browser, os_id, os) with a column still to convert
+    public void forEachClick(long afterClickId, long toClickId, RowCallbackHandler handler) {
+        jdbcTemplate.query(FIND_CLICKS_SQL, handler, afterClickId, toClickId);
+    }
+
+    public void updateClicks(List<ConvertedClick> clicks) {
+        jdbcTemplate.batchUpdate(UPDATE_CLICK_SQL, clicks, 1000, (ps, click) -> {
+            ps.setBytes(1, click.ipBytes());
+            ps.setObject(2, click.refererHostId(), Types.INTEGER);
+            ps.setObject(3, click.refererId(), Types.INTEGER);
+            ps.setObject(4, click.userAgentId(), Types.INTEGER);
+            ps.setObject(5, click.deviceTypeId(), Types.INTEGER);
+            ps.setObject(6, click.browserId(), Types.INTEGER);
+            ps.setObject(7, click.osId(), Types.INTEGER);
+            ps.setLong(8, click.id());
+            ps.setTimestamp(9, click.clickedAt());
+        });
+    }
+
+    public void updateBackfillProgress(long lastClickId) {
+        jdbcTemplate.update("UPDATE click_column_backfill SET last_click_id = ? WHERE id = 1", lastClickId);
+    }
+
+    public void markCompleted() {
+        jdbcTemplate.update("UPDATE click_column_backfill SET completed_at = CURRENT_TIMESTAMP WHERE id = 1");
+    }
+
+    // Clicks of older instances waiting for ClickCatchUp, which still need their text values
+    public boolean hasQueuedCatchUp() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM click_catch_up)", Boolean.class));
+    }
+
+    // Only a catalog change on Postgres; the space of the cleared values is reclaimed as rows are rewritten
+    public void dropTextColumns() {
+        jdbcTemplate.execute(DROP_TEXT_COLUMNS_SQL);
+        jdbcTemplate.update("UPDATE click_column_backfill SET text_columns_dropped = TRUE WHERE id = 1");
+    }
+
+    public record Progress(long lastClickId, long targetClickId, Timestamp completedAt, boolean textColumnsDropped) {
+
+        public boolean isComplete() {
+            return lastClickId >= targetClickId;
+        }
+    }
+
+    public record ConvertedClick(long id, Timestamp clickedAt, byte[] ipBytes, Integer refererHostId, Integer refererId,
+                                 Integer userAgentId, Integer deviceTypeId, Integer browserId, Integer osId) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.entity.ClickDimension;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ClickDimensionRepository extends JpaRepository<ClickDimension, Integer> {
+
+    // valueMd5 leads the lookup into the unique index; value guards against an MD5 collision
+    Optional<ClickDimension> findByDimensionAndValueMd5AndValue(ClickDimension.Dimension dimension, String valueMd5, String value);
+}
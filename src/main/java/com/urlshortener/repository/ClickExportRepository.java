@@ -0,0 +1,88 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.config.DedicatedDataSources;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams raw clicks with their dimension values through a forward-only cursor, fetchSize rows at a time.
+// Exports hold a connection for as long as the client keeps reading, so they use a pool of their own
+@Repository
+public class ClickExportRepository {
+
+    // The %s pick the address and dimension values; clicks may still hold them only as text until ClickColumnBackfill
+    // has converted every click, and the text columns are gone afterwards
+    private static final String SELECT_SQL = "SELECT c.clicked_at, %s, c.country, c.city, %s, c.weight, c.is_bot, c.ip_bytes "
+            + "FROM click_analytics c "
+            + "LEFT JOIN click_dimensions device ON device.id = c.device_type_id "
+            + "LEFT JOIN click_dimensions browser ON browser.id = c.browser_id "
+            + "LEFT JOIN click_dimensions os ON os.id = c.os_id "
+            + "LEFT JOIN click_dimensions referer ON referer.id = c.referer_id "
+            + "LEFT JOIN click_dimensions user_agent ON user_agent.id = c.user_agent_id "
+            + "WHERE c.url_id = ?";
+
+    private static final String WITH_TEXT_COLUMNS_SQL = String.format(SELECT_SQL, "c.ip_address",
+            "COALESCE(device.dimension_value, c.device_type), COALESCE(browser.dimension_value, c.browser), "
+                    + "COALESCE(os.dimension_value, c.os), COALESCE(referer.dimension_value, c.referer), "
+                    + "COALESCE(user_agent.dimension_value, c.user_agent)");
+
+    private static final String WITHOUT_TEXT_COLUMNS_SQL = String.format(SELECT_SQL, "CAST(NULL AS VARCHAR(45))",
+            "device.dimension_value, browser.dimension_value, os.dimension_value, referer.dimension_value, "
+                    + "user_agent.dimension_value");
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ClickExportRepository(DataSourceProperties dataSourceProperties,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.analytics.export.fetch-size:1000}") int fetchSize,
+                                 @Value("${app.analytics.export.max-concurrent:4}") int maxConcurrent) {
+        this.dataSource = DedicatedDataSources.create(dataSourceProperties, "click-export", maxConcurrent, meterRegistry);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSource.close();
+    }
+
+    /**
+     * Runs in a read-only transaction of its own: the Postgres driver only uses a cursor with
+     * autocommit off, and would otherwise read the whole result into memory. Rows of (clicked_at,
+     * ip_address, country, city, device_type, browser, os, referer, user_agent, weight, is_bot,
+     * ip_bytes), oldest first; from and to are optional, to exclusive.
+     */
+    public void forEachClick(long urlId, LocalDateTime from, LocalDateTime to, boolean withTextColumns,
+                             RowCallbackHandler handler) {
+        StringBuilder sql = new StringBuilder(withTextColumns ? WITH_TEXT_COLUMNS_SQL : WITHOUT_TEXT_COLUMNS_SQL);
+        List<Object> args = new ArrayList<>(3);
+        args.add(urlId);
+        // Only given bounds become conditions; an "? IS NULL OR" filter would keep the planner from pruning partitions
+        if (from != null) {
+            sql.append(" AND c.clicked_at >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND c.clicked_at < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        sql.append(" ORDER BY c.clicked_at");
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), handler, args.toArray()));
+    }
+}
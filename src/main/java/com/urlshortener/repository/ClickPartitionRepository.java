@@ -0,0 +1,107 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// DDL for the monthly click_analytics partitions, named click_analytics_yyyy_MM, and the default partition
+@Repository
+@RequiredArgsConstructor
+public class ClickPartitionRepository {
+
+    private static final String PARTITION_PREFIX = "click_analytics_";
+    private static final String DEFAULT_PARTITION = "click_analytics_default";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final long MAINTENANCE_LOCK_KEY = 0x636c69636b5f7074L;
+
+    private static final String LIST_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = 'click_analytics'::regclass";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must run inside a transaction; the lock is held until it ends
+    public boolean tryLockMaintenance() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, MAINTENANCE_LOCK_KEY));
+    }
+
+    // Months of the attached partitions; tables not following the naming scheme are ignored
+    public List<YearMonth> findPartitionMonths() {
+        List<YearMonth> months = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class)) {
+            if (name.startsWith(PARTITION_PREFIX)) {
+                try {
+                    months.add(YearMonth.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+                } catch (RuntimeException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return months;
+    }
+
+    // Months with clicks in the default partition, i.e. without a partition of their own
+    public List<YearMonth> findDefaultPartitionMonths() {
+        List<YearMonth> months = new ArrayList<>();
+        for (LocalDate month : jdbcTemplate.queryForList(
+                "SELECT DISTINCT CAST(date_trunc('month', clicked_at) AS DATE) FROM " + DEFAULT_PARTITION, LocalDate.class)) {
+            months.add(YearMonth.from(month));
+        }
+        return months;
+    }
+
+    /**
+     * Creates the month's partition from the clicks the default partition holds for it. Postgres
+     * refuses to attach a range while the default partition has rows in it, so the rows are moved
+     * to a standalone table first, which is then attached. Must run inside a transaction. Returns
+     * the clicks moved.
+     */
+    public int createPartitionFromDefault(YearMonth month) {
+        String partition = partitionName(month);
+        // Held to the end of the transaction, so no click for the month lands in the default partition before the attach
+        jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN EXCLUSIVE MODE");
+        jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE click_analytics INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE clicked_at >= ? AND clicked_at < ? RETURNING *) INSERT INTO " + partition + " SELECT * FROM moved",
+                monthStart(month), monthStart(month.plusMonths(1)));
+        // Attaching builds the partition's share of the parent's indexes
+        jdbcTemplate.execute(String.format("ALTER TABLE click_analytics ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                partition, month.atDay(1), month.plusMonths(1).atDay(1)));
+        return moved;
+    }
+
+    public int deleteFromDefault(YearMonth month) {
+        return jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE clicked_at >= ? AND clicked_at < ?",
+                monthStart(month), monthStart(month.plusMonths(1)));
+    }
+
+    public void createPartition(YearMonth month) {
+        jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF click_analytics FOR VALUES FROM ('%s') TO ('%s')",
+                partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+    }
+
+    public void detachPartition(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE click_analytics DETACH PARTITION " + partitionName(month));
+    }
+
+    public void dropPartition(YearMonth month) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(month));
+    }
+
+    public static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    private static Timestamp monthStart(YearMonth month) {
+        return Timestamp.valueOf(month.atDay(1).atStartOfDay());
+    }
+}
@@ -0,0 +1,94 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC over the click rollup tables, which have no entity of their own
+@Repository
+@RequiredArgsConstructor
+public class ClickRollupRepository {
+
+    public static final String HOURLY = "click_rollups_hourly";
+    public static final String DAILY = "click_rollups_daily";
+    public static final String TOTAL = "TOTAL";
+    // Daily clicks tagged as bots, under value_id 0. The backfill writes none: the clicks it rolls up predate bot tagging
+    public static final String BOT = "BOT";
+
+    private static final String UPSERT_SQL = "INSERT INTO %1$s (url_id, dimension, bucket_start, value_id, clicks) "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (url_id, dimension, bucket_start, value_id) DO UPDATE SET clicks = %1$s.clicks + EXCLUDED.clicks";
+
+    private static final String LOCK_BACKFILL_SQL =
+            "SELECT last_click_id, target_click_id FROM click_rollup_backfill WHERE id = 1 FOR UPDATE";
+
+    private static final String BACKFILL_COUNTRIES_SQL = "INSERT INTO click_dimensions (dimension, dimension_value, value_md5) "
+            + "SELECT DISTINCT 'COUNTRY', country, md5(country) FROM click_analytics WHERE id > ? AND id <= ? AND country IS NOT NULL "
+            + "ON CONFLICT (dimension, value_md5) DO NOTHING";
+
+    private static final String BACKFILL_DAILY_SQL = "INSERT INTO click_rollups_daily (url_id, dimension, bucket_start, value_id, clicks) "
+            + "SELECT c.url_id, d.dimension, date_trunc('day', c.clicked_at), d.value_id, SUM(c.weight) "
+            + "FROM click_analytics c "
+            + "LEFT JOIN click_dimensions country ON country.dimension = 'COUNTRY' AND country.value_md5 = md5(c.country) "
+            + "CROSS JOIN LATERAL (VALUES ('TOTAL', 0), "
+            + "('DEVICE_TYPE', COALESCE(c.device_type_id, 0)), ('BROWSER', COALESCE(c.browser_id, 0)), "
+            + "('OS', COALESCE(c.os_id, 0)), ('REFERER_HOST', COALESCE(c.referer_host_id, 0)), "
+            + "('COUNTRY', COALESCE(country.id, 0))) AS d(dimension, value_id) "
+            + "WHERE c.id > ? AND c.id <= ? "
+            + "GROUP BY 1, 2, 3, 4 "
+            + "ON CONFLICT (url_id, dimension, bucket_start, value_id) DO UPDATE SET clicks = click_rollups_daily.clicks + EXCLUDED.clicks";
+
+    private static final String BACKFILL_HOURLY_SQL = "INSERT INTO click_rollups_hourly (url_id, dimension, bucket_start, value_id, clicks) "
+            + "SELECT url_id, 'TOTAL', date_trunc('hour', clicked_at), 0, SUM(weight) "
+            + "FROM click_analytics WHERE id > ? AND id <= ? "
+            + "GROUP BY 1, 2, 3, 4 "
+            + "ON CONFLICT (url_id, dimension, bucket_start, value_id) DO UPDATE SET clicks = click_rollups_hourly.clicks + EXCLUDED.clicks";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Keys are written in sorted order so concurrent writers lock rows in the same order and can't deadlock
+    public void addClicks(String table, Map<Key, Long> clicks) {
+        List<Map.Entry<Key, Long>> rows = new ArrayList<>(clicks.entrySet());
+        rows.sort(Map.Entry.comparingByKey());
+        jdbcTemplate.batchUpdate(String.format(UPSERT_SQL, table), rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.getKey().urlId());
+            ps.setString(2, row.getKey().dimension());
+            ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucketStart()));
+            ps.setInt(4, row.getKey().valueId());
+            ps.setLong(5, row.getValue());
+        });
+    }
+
+    // Must run inside a transaction; holds the backfill row lock until it ends. Returns {lastClickId, targetClickId}
+    public long[] lockBackfillProgress() {
+        return jdbcTemplate.queryForObject(LOCK_BACKFILL_SQL, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)});
+    }
+
+    public void backfill(long afterClickId, long toClickId) {
+        jdbcTemplate.update(BACKFILL_COUNTRIES_SQL, afterClickId, toClickId);
+        jdbcTemplate.update(BACKFILL_DAILY_SQL, afterClickId, toClickId);
+        jdbcTemplate.update(BACKFILL_HOURLY_SQL, afterClickId, toClickId);
+        jdbcTemplate.update("UPDATE click_rollup_backfill SET last_click_id = ? WHERE id = 1", toClickId);
+    }
+
+    public record Key(long urlId, String dimension, LocalDateTime bucketStart, int valueId) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(urlId, other.urlId);
+            if (result == 0) {
+                result = dimension.compareTo(other.dimension);
+            }
+            if (result == 0) {
+                result = bucketStart.compareTo(other.bucketStart);
+            }
+            return result != 0 ? result : Integer.compare(valueId, other.valueId);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.entity.ClickDimension.Dimension;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes every click count shown on a url's analytics page in one query: the sliding windows,
+ * the daily chart and the top ten values of each breakdown. GROUPING SETS produce all groupings
+ * from a single scan, FILTER clauses route each row to the aggregates it belongs to, and a
+ * ROW_NUMBER window keeps only the top values. Databases without GROUPING SETS get the same rows
+ * from a UNION ALL of one aggregate per grouping.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ClickSummaryRepository {
+
+    private static final int TOP_VALUES = 10;
+
+    // GROUPING() bitmasks of the raw query, one bit per grouping column, the first column highest
+    private static final int RAW_DEVICE_TYPE = 0b011111;
+    private static final int RAW_BROWSER = 0b101111;
+    private static final int RAW_OS = 0b110111;
+    private static final int RAW_REFERER_HOST = 0b111011;
+    private static final int RAW_COUNTRY = 0b111101;
+    private static final int RAW_DAY = 0b111110;
+    private static final int RAW_TOTAL = 0b111111;
+
+    // Keeps the top ten values of each breakdown grouped by the inner query, and every day and total row
+    private static final String RAW_SUMMARY_SQL = """
+            SELECT grouping_id, device_type_id, browser_id, os_id, referer_host_id, country, click_day,
+                   clicks, window_clicks, clicks_24h, clicks_7d, clicks_30d, bot_clicks
+            FROM (
+                SELECT grouped.*, ROW_NUMBER() OVER (PARTITION BY grouping_id ORDER BY clicks DESC) AS value_rank
+                FROM (%s) grouped
+                WHERE grouping_id <> :refererHostSet OR referer_host_id IS NOT NULL
+            ) ranked
+            WHERE value_rank <= :topValues OR grouping_id >= :daySet
+            ORDER BY grouping_id, value_rank
+            """;
+
+    private static final String GROUPING_SETS_SQL = RAW_SUMMARY_SQL.formatted("""
+            SELECT GROUPING(device_type_id, browser_id, os_id, referer_host_id, country, CAST(clicked_at AS DATE)) AS grouping_id,
+                   device_type_id, browser_id, os_id, referer_host_id, country, CAST(clicked_at AS DATE) AS click_day,
+                   SUM(weight) AS clicks,
+                   SUM(weight) FILTER (WHERE clicked_at >= :windowStart) AS window_clicks,
+                   SUM(weight) FILTER (WHERE clicked_at >= :since24h) AS clicks_24h,
+                   SUM(weight) FILTER (WHERE clicked_at >= :since7d) AS clicks_7d,
+                   SUM(weight) FILTER (WHERE clicked_at >= :since30d) AS clicks_30d,
+                   SUM(weight) FILTER (WHERE is_bot) AS bot_clicks
+            FROM click_analytics
+            WHERE url_id = :urlId
+            GROUP BY GROUPING SETS ((device_type_id), (browser_id), (os_id), (referer_host_id), (country),
+                                    (CAST(clicked_at AS DATE)), ())
+            """);
+
+    // The same rows from one aggregate per grouping, for databases without GROUPING SETS; scans the url's clicks seven times
+    private static final String UNION_SQL = RAW_SUMMARY_SQL.formatted(unionOfGroupings());
+
+    private static String unionOfGroupings() {
+        String[] columns = {"device_type_id", "browser_id", "os_id", "referer_host_id", "country", "CAST(clicked_at AS DATE)"};
+        String[] aliases = {"device_type_id", "browser_id", "os_id", "referer_host_id", "country", "click_day"};
+        String[] types = {"INTEGER", "INTEGER", "INTEGER", "INTEGER", "VARCHAR(2)", "DATE"};
+        int[] groupingIds = {RAW_DEVICE_TYPE, RAW_BROWSER, RAW_OS, RAW_REFERER_HOST, RAW_COUNTRY, RAW_DAY, RAW_TOTAL};
+        StringBuilder sql = new StringBuilder();
+        for (int grouping = 0; grouping < groupingIds.length; grouping++) {
+            sql.append(grouping == 0 ? "SELECT " : " UNION ALL SELECT ").append(groupingIds[grouping]).append(" AS grouping_id");
+            for (int column = 0; column < columns.length; column++) {
+                sql.append(", ").append(column == grouping ? columns[column] : "CAST(NULL AS " + types[column] + ")")
+                        .append(" AS ").append(aliases[column]);
+            }
+            sql.append(", SUM(weight) AS clicks")
+                    .append(", SUM(CASE WHEN clicked_at >= :windowStart THEN weight END) AS window_clicks")
+                    .append(", SUM(CASE WHEN clicked_at >= :since24h THEN weight END) AS clicks_24h")
+                    .append(", SUM(CASE WHEN clicked_at >= :since7d THEN weight END) AS clicks_7d")
+                    .append(", SUM(CASE WHEN clicked_at >= :since30d THEN weight END) AS clicks_30d")
+                    .append(", SUM(CASE WHEN is_bot THEN weight END) AS bot_clicks")
+                    .append(" FROM click_analytics WHERE url_id = :urlId");
+            if (grouping < columns.length) {
+                sql.append(" GROUP BY ").append(columns[grouping]);
+            }
+        }
+        return sql.toString();
+    }
+
+    // GROUPING() bitmasks of the rollup query
+    private static final int ROLLUP_DIMENSION = 0b001;
+    private static final int ROLLUP_DAY = 0b110;
+    private static final int ROLLUP_TOTAL = 0b111;
+
+    // Daily rollups give the breakdowns and whole days, hourly rollups the windows and the first
+    // partial day, and raw clicks only the minutes before the first whole hour of each window
+    private static final String ROLLUP_SUMMARY_SQL = """
+            WITH source AS (
+                SELECT 'D' AS granularity, dimension, bucket_start, value_id, clicks
+                FROM click_rollups_daily
+                WHERE url_id = :urlId
+                UNION ALL
+                SELECT 'H', dimension, bucket_start, value_id, clicks
+                FROM click_rollups_hourly
+                WHERE url_id = :urlId AND dimension = 'TOTAL'
+                  AND (bucket_start >= :hour30d OR (bucket_start >= :windowHour AND bucket_start < :firstFullDay))
+                UNION ALL
+                SELECT 'R', 'TOTAL', clicked_at, 0, weight
+                FROM click_analytics
+                WHERE url_id = :urlId
+                  AND ((clicked_at >= :since24h AND clicked_at < :hour24h)
+                    OR (clicked_at >= :since7d AND clicked_at < :hour7d)
+                    OR (clicked_at >= :since30d AND clicked_at < :hour30d)
+                    OR (clicked_at >= :windowStart AND clicked_at < :windowHour))
+            ), grouped AS (
+                SELECT GROUPING(dimension, value_id, bucket_start) AS grouping_id, dimension, value_id, bucket_start,
+                       SUM(clicks) FILTER (WHERE granularity = 'D' AND dimension <> 'TOTAL') AS dimension_clicks,
+                       SUM(clicks) FILTER (WHERE granularity = 'D' AND dimension = 'TOTAL'
+                                             AND bucket_start >= :firstFullDay) AS day_clicks,
+                       SUM(clicks) FILTER (WHERE (granularity = 'H' AND bucket_start >= :hour24h)
+                                              OR (granularity = 'R' AND bucket_start >= :since24h AND bucket_start < :hour24h)) AS clicks_24h,
+                       SUM(clicks) FILTER (WHERE (granularity = 'H' AND bucket_start >= :hour7d)
+                                              OR (granularity = 'R' AND bucket_start >= :since7d AND bucket_start < :hour7d)) AS clicks_7d,
+                       SUM(clicks) FILTER (WHERE (granularity = 'H' AND bucket_start >= :hour30d)
+                                              OR (granularity = 'R' AND bucket_start >= :since30d AND bucket_start < :hour30d)) AS clicks_30d,
+                       SUM(clicks) FILTER (WHERE (granularity = 'H' AND bucket_start >= :windowHour AND bucket_start < :firstFullDay)
+                                              OR (granularity = 'R' AND bucket_start >= :windowStart AND bucket_start < :windowHour)) AS first_day_clicks
+                FROM source
+                GROUP BY GROUPING SETS ((dimension, value_id), (bucket_start), ())
+            )
+            SELECT grouping_id, dimension, value_id, bucket_start, dimension_clicks, day_clicks,
+                   clicks_24h, clicks_7d, clicks_30d, first_day_clicks
+            FROM (
+                SELECT grouped.*, ROW_NUMBER() OVER (PARTITION BY grouping_id, dimension ORDER BY dimension_clicks DESC) AS value_rank
+                FROM grouped
+                WHERE grouping_id <> :dimensionSet
+                   OR (dimension_clicks IS NOT NULL AND NOT (dimension = 'REFERER_HOST' AND value_id = 0))
+            ) ranked
+            WHERE (grouping_id = :dimensionSet AND value_rank <= :topValues)
+               OR (grouping_id = :daySet AND day_clicks IS NOT NULL)
+               OR grouping_id = :totalSet
+            ORDER BY grouping_id, dimension, value_rank, bucket_start
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${app.analytics.summary.grouping-sets:true}")
+    private boolean groupingSets;
+
+    // Reads raw clicks only; used until the rollups are complete
+    public ClickSummary summarizeClicks(long urlId, LocalDateTime now, LocalDateTime windowStart) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("urlId", urlId)
+                .addValue("windowStart", Timestamp.valueOf(windowStart))
+                .addValue("since24h", Timestamp.valueOf(now.minusHours(24)))
+                .addValue("since7d", Timestamp.valueOf(now.minusDays(7)))
+                .addValue("since30d", Timestamp.valueOf(now.minusDays(30)))
+                .addValue("refererHostSet", RAW_REFERER_HOST)
+                .addValue("daySet", RAW_DAY)
+                .addValue("topValues", TOP_VALUES);
+
+        ClickSummary summary = new ClickSummary();
+        jdbcTemplate.query(groupingSets ? GROUPING_SETS_SQL : UNION_SQL, params, (RowCallbackHandler) rs -> {
+            switch (rs.getInt("grouping_id")) {
+                case RAW_DEVICE_TYPE -> summary.addTopValue(Dimension.DEVICE_TYPE, rs.getObject("device_type_id", Integer.class), rs.getLong("clicks"));
+                case RAW_BROWSER -> summary.addTopValue(Dimension.BROWSER, rs.getObject("browser_id", Integer.class), rs.getLong("clicks"));
+                case RAW_OS -> summary.addTopValue(Dimension.OS, rs.getObject("os_id", Integer.class), rs.getLong("clicks"));
+                case RAW_REFERER_HOST -> summary.addTopValue(Dimension.REFERER_HOST, rs.getObject("referer_host_id", Integer.class), rs.getLong("clicks"));
+                case RAW_COUNTRY -> summary.addTopValue(Dimension.COUNTRY, rs.getString("country"), rs.getLong("clicks"));
+                case RAW_DAY -> {
+                    long windowClicks = rs.getLong("window_clicks");
+                    if (windowClicks > 0) {
+                        summary.dailyClicks.add(new Object[]{rs.getDate("click_day").toLocalDate(), windowClicks});
+                    }
+                }
+                case RAW_TOTAL -> {
+                    summary.setWindows(rs);
+                    summary.botClicks = rs.getLong("bot_clicks");
+                }
+                default -> {
+                }
+            }
+        });
+        summary.dailyClicks.sort((a, b) -> ((LocalDate) a[0]).compareTo((LocalDate) b[0]));
+        return summary;
+    }
+
+    // Breakdown values are click_dimensions ids, country included
+    public ClickSummary summarizeRollups(long urlId, LocalDateTime now, LocalDateTime windowStart) {
+        LocalDateTime windowHour = ceilingHour(windowStart);
+        LocalDate firstFullDay = windowStart.equals(windowStart.toLocalDate().atStartOfDay())
+                ? windowStart.toLocalDate()
+                : windowStart.toLocalDate().plusDays(1);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("urlId", urlId)
+                .addValue("windowStart", Timestamp.valueOf(windowStart))
+                .addValue("windowHour", Timestamp.valueOf(windowHour))
+                .addValue("firstFullDay", Timestamp.valueOf(firstFullDay.atStartOfDay()))
+                .addValue("dimensionSet", ROLLUP_DIMENSION)
+                .addValue("daySet", ROLLUP_DAY)
+                .addValue("totalSet", ROLLUP_TOTAL)
+                .addValue("topValues", TOP_VALUES);
+        addWindow(params, "24h", now.minusHours(24));
+        addWindow(params, "7d", now.minusDays(7));
+        addWindow(params, "30d", now.minusDays(30));
+
+        ClickSummary summary = new ClickSummary();
+        jdbcTemplate.query(ROLLUP_SUMMARY_SQL, params, (RowCallbackHandler) rs -> {
+            switch (rs.getInt("grouping_id")) {
+                case ROLLUP_DIMENSION -> {
+                    String dimension = rs.getString("dimension");
+                    int valueId = rs.getInt("value_id");
+                    if (ClickRollupRepository.BOT.equals(dimension)) {
+                        summary.botClicks = rs.getLong("dimension_clicks");
+                    } else {
+                        summary.addTopValue(Dimension.valueOf(dimension), valueId != 0 ? valueId : null, rs.getLong("dimension_clicks"));
+                    }
+                }
+                case ROLLUP_DAY -> summary.dailyClicks.add(new Object[]{
+                        rs.getTimestamp("bucket_start").toLocalDateTime().toLocalDate(), rs.getLong("day_clicks")});
+                case ROLLUP_TOTAL -> {
+                    summary.setWindows(rs);
+                    long firstDayClicks = rs.getLong("first_day_clicks");
+                    if (firstDayClicks > 0) {
+                        summary.dailyClicks.add(0, new Object[]{windowStart.toLocalDate(), firstDayClicks});
+                    }
+                }
+                default -> {
+                }
+            }
+        });
+        return summary;
+    }
+
+    private static void addWindow(MapSqlParameterSource params, String window, LocalDateTime since) {
+        params.addValue("since" + window, Timestamp.valueOf(since));
+        params.addValue("hour" + window, Timestamp.valueOf(ceilingHour(since)));
+    }
+
+    private static LocalDateTime ceilingHour(LocalDateTime time) {
+        LocalDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+        return hour.equals(time) ? hour : hour.plusHours(1);
+    }
+
+    public static class ClickSummary {
+
+        private long clicksLast24Hours;
+        private long clicksLast7Days;
+        private long clicksLast30Days;
+        private long botClicks;
+        // Rows of (LocalDate day, Long clicks), oldest first
+        private final List<Object[]> dailyClicks = new ArrayList<>();
+        // Rows of (value, Long clicks), most clicked first; values are click_dimensions ids except raw countries
+        private final Map<Dimension, List<Object[]>> topValues = new EnumMap<>(Dimension.class);
+
+        public long clicksLast24Hours() {
+            return clicksLast24Hours;
+        }
+
+        public long clicksLast7Days() {
+            return clicksLast7Days;
+        }
+
+        public long clicksLast30Days() {
+            return clicksLast30Days;
+        }
+
+        // All-time clicks tagged as bots
+        public long botClicks() {
+            return botClicks;
+        }
+
+        public List<Object[]> dailyClicks() {
+            return dailyClicks;
+        }
+
+        public List<Object[]> topValues(Dimension dimension) {
+            return topValues.getOrDefault(dimension, List.of());
+        }
+
+        private void addTopValue(Dimension dimension, Object value, long clicks) {
+            topValues.computeIfAbsent(dimension, d -> new ArrayList<>()).add(new Object[]{value, clicks});
+        }
+
+        private void setWindows(ResultSet rs) throws SQLException {
+            clicksLast24Hours = rs.getLong("clicks_24h");
+            clicksLast7Days = rs.getLong("clicks_7d");
+            clicksLast30Days = rs.getLong("clicks_30d");
+        }
+    }
+}
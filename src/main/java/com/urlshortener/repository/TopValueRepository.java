@@ -0,0 +1,95 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC over the top value summary table; summaries are opaque Space-Saving bytes here
+@Repository
+@RequiredArgsConstructor
+public class TopValueRepository {
+
+    private static final byte[] EMPTY_SUMMARY = new byte[0];
+
+    private static final String INSERT_SQL =
+            "INSERT INTO url_top_values (url_id, dimension, summary) VALUES (?, ?, ?) ON CONFLICT (url_id, dimension) DO NOTHING";
+
+    private static final String LOCK_SQL = "SELECT s.url_id, s.dimension, s.summary FROM url_top_values s "
+            + "JOIN unnest(?::bigint[], ?::varchar[]) AS k(url_id, dimension) ON s.url_id = k.url_id AND s.dimension = k.dimension "
+            + "ORDER BY s.url_id, s.dimension FOR UPDATE OF s";
+
+    private static final String UPDATE_SQL = "UPDATE url_top_values SET summary = ? WHERE url_id = ? AND dimension = ?";
+
+    private static final String FIND_SQL = "SELECT dimension, summary FROM url_top_values WHERE url_id = ?";
+
+    private static final String LOCK_BACKFILL_SQL =
+            "SELECT last_click_id, target_click_id FROM top_value_backfill WHERE id = 1 FOR UPDATE";
+    private static final String BACKFILL_CLICKS_SQL = "SELECT c.url_id, r.dimension_value, c.country, c.weight "
+            + "FROM click_analytics c LEFT JOIN click_dimensions r ON r.id = c.referer_host_id "
+            + "WHERE c.id > ? AND c.id <= ? AND (c.referer_host_id IS NOT NULL OR c.country IS NOT NULL)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must run inside a transaction. Creates missing rows, then locks and returns the stored summary of every key
+    public Map<Key, byte[]> lockSummaries(Collection<Key> keys) {
+        List<Key> sorted = new ArrayList<>(keys);
+        sorted.sort(null);
+        jdbcTemplate.batchUpdate(INSERT_SQL, sorted, sorted.size(), (ps, key) -> {
+            ps.setLong(1, key.urlId());
+            ps.setString(2, key.dimension());
+            ps.setBytes(3, EMPTY_SUMMARY);
+        });
+        Map<Key, byte[]> summaries = new HashMap<>();
+        jdbcTemplate.query(LOCK_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", sorted.stream().map(Key::urlId).toArray()));
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", sorted.stream().map(Key::dimension).toArray()));
+        }, (RowCallbackHandler) rs -> summaries.put(new Key(rs.getLong(1), rs.getString(2)), rs.getBytes(3)));
+        return summaries;
+    }
+
+    public void updateSummaries(Map<Key, byte[]> summaries) {
+        List<Map.Entry<Key, byte[]>> rows = new ArrayList<>(summaries.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setBytes(1, row.getValue());
+            ps.setLong(2, row.getKey().urlId());
+            ps.setString(3, row.getKey().dimension());
+        });
+    }
+
+    // Stored summaries of one url by dimension
+    public Map<String, byte[]> findSummaries(long urlId) {
+        Map<String, byte[]> summaries = new HashMap<>();
+        jdbcTemplate.query(FIND_SQL, (RowCallbackHandler) rs -> summaries.put(rs.getString(1), rs.getBytes(2)), urlId);
+        return summaries;
+    }
+
+    // Must run inside a transaction; holds the backfill row lock until it ends. Returns {lastClickId, targetClickId}
+    public long[] lockBackfillProgress() {
+        return jdbcTemplate.queryForObject(LOCK_BACKFILL_SQL, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)});
+    }
+
+    // Rows of (url_id, referer host, country, weight)
+    public void forEachClick(long afterClickId, long toClickId, RowCallbackHandler handler) {
+        jdbcTemplate.query(BACKFILL_CLICKS_SQL, handler, afterClickId, toClickId);
+    }
+
+    public void updateBackfillProgress(long lastClickId) {
+        jdbcTemplate.update("UPDATE top_value_backfill SET last_click_id = ? WHERE id = 1", lastClickId);
+    }
+
+    public record Key(long urlId, String dimension) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(urlId, other.urlId);
+            return result != 0 ? result : dimension.compareTo(other.dimension);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.urlshortener.repository;
+
+import java.util.Map;
+
+public interface UrlClickCountRepository {
+
+    // Writes in chunks, so callers run it in one transaction to apply all of them or none
+    void incrementClickCounts(Map<Long, Long> deltasByUrlId);
+}
@@ -0,0 +1,59 @@
+package com.urlshortener.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class UrlClickCountRepositoryImpl implements UrlClickCountRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String INCREMENT_ONE_SQL = "UPDATE urls SET click_count = click_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean updateFromValues;
+
+    public UrlClickCountRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                       @Value("${app.analytics.click-count.update-from-values:true}") boolean updateFromValues) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.updateFromValues = updateFromValues;
+    }
+
+    // One UPDATE ... FROM (VALUES ...) per chunk instead of a statement per url; without that Postgres
+    // syntax, one JDBC batch of single-row updates
+    @Override
+    public void incrementClickCounts(Map<Long, Long> deltasByUrlId) {
+        List<Map.Entry<Long, Long>> deltas = new ArrayList<>(deltasByUrlId.entrySet());
+        // Rows are locked in id order, so concurrent flushes from other instances can't deadlock
+        deltas.sort(Map.Entry.comparingByKey());
+        if (!updateFromValues) {
+            jdbcTemplate.batchUpdate(INCREMENT_ONE_SQL, deltas, MAX_ROWS_PER_STATEMENT, (ps, delta) -> {
+                ps.setLong(1, delta.getValue());
+                ps.setLong(2, delta.getKey());
+            });
+            return;
+        }
+        for (int from = 0; from < deltas.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Map.Entry<Long, Long>> chunk = deltas.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, deltas.size()));
+            jdbcTemplate.update(buildIncrementSql(chunk.size()), ps -> {
+                int index = 1;
+                for (Map.Entry<Long, Long> delta : chunk) {
+                    ps.setLong(index++, delta.getKey());
+                    ps.setLong(index++, delta.getValue());
+                }
+            });
+        }
+    }
+
+    private static String buildIncrementSql(int rows) {
+        StringBuilder sql = new StringBuilder(96 + rows * 8)
+                .append("UPDATE urls SET click_count = urls.click_count + v.delta FROM (VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+        }
+        return sql.append(") AS v(id, delta) WHERE urls.id = v.id").toString();
+    }
+}
@@ -0,0 +1,7 @@
+package com.urlshortener.repository;
+
+import java.time.LocalDateTime;
+
+// Read-only view of the urls columns the redirect and click paths need, loaded without an entity
+public record UrlLookup(Long id, String originalUrl, boolean active, LocalDateTime expiresAt) {
+}
@@ -0,0 +1,14 @@
+package com.urlshortener.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface UrlLookupRepository {
+
+    Optional<UrlLookup> findLookupByShortCode(String shortCode);
+
+    // Rows of (short_code, id, original_url, expires_at), most clicked first. The driver cancels the
+    // query once timeoutSeconds pass; close the stream to release the statement
+    Stream<Object[]> streamMostClickedActiveUrls(LocalDateTime now, int limit, int fetchSize, int timeoutSeconds);
+}
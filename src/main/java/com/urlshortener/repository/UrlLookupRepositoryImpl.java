@@ -0,0 +1,51 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Plain JDBC keeps the hot redirect lookup clear of the persistence context and entity hydration
+@RequiredArgsConstructor
+public class UrlLookupRepositoryImpl implements UrlLookupRepository {
+
+    private static final String FIND_BY_SHORT_CODE_SQL =
+            "SELECT id, original_url, is_active, expires_at FROM urls WHERE short_code = ?";
+
+    private static final String MOST_CLICKED_ACTIVE_SQL = "SELECT short_code, id, original_url, expires_at FROM urls "
+            + "WHERE is_active = TRUE AND (expires_at IS NULL OR expires_at > ?) ORDER BY click_count DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<UrlLookup> findLookupByShortCode(String shortCode) {
+        return jdbcTemplate.query(FIND_BY_SHORT_CODE_SQL, rs -> rs.next()
+                ? Optional.of(new UrlLookup(
+                        rs.getLong(1),
+                        rs.getString(2),
+                        rs.getBoolean(3),
+                        rs.getObject(4, LocalDateTime.class)))
+                : Optional.empty(), shortCode);
+    }
+
+    @Override
+    public Stream<Object[]> streamMostClickedActiveUrls(LocalDateTime now, int limit, int fetchSize, int timeoutSeconds) {
+        // Set on the statement rather than the shared JdbcTemplate, which every other query goes through
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement statement = connection.prepareStatement(MOST_CLICKED_ACTIVE_SQL);
+            statement.setFetchSize(fetchSize);
+            statement.setQueryTimeout(timeoutSeconds);
+            statement.setTimestamp(1, Timestamp.valueOf(now));
+            statement.setInt(2, limit);
+            return statement;
+        }, (rs, rowNum) -> new Object[]{
+                rs.getString(1),
+                rs.getLong(2),
+                rs.getString(3),
+                rs.getObject(4, LocalDateTime.class)});
+    }
+}
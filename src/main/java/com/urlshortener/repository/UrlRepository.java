@@ -2,25 +2,37 @@ package com.urlshortener.repository;
 
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface UrlRepository extends JpaRepository<Url, Long> {
+public interface UrlRepository extends JpaRepository<Url, Long>, UrlLookupRepository, UrlClickCountRepository {
+
+    int DEACTIVATION_BATCH_SIZE = 1000;
 
     Optional<Url> findByShortCode(String shortCode);
 
     boolean existsByShortCode(String shortCode);
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT u.id, u.shortCode, u.createdAt FROM Url u WHERE u.id > :afterId ORDER BY u.id")
+    Stream<Object[]> streamShortCodesAfter(@Param("afterId") Long afterId);
+
     Page<Url> findByUserOrderByCreatedAtDesc(User user, Pageable pageable);
 
     List<Url> findByUserAndIsActiveTrue(User user);
@@ -28,13 +40,22 @@ public interface UrlRepository extends JpaRepository<Url, Long> {
     @Query("SELECT u FROM Url u WHERE u.expiresAt IS NOT NULL AND u.expiresAt < :now AND u.isActive = true")
     List<Url> findExpiredUrls(@Param("now") LocalDateTime now);
 
-    @Modifying
-    @Query("UPDATE Url u SET u.isActive = false WHERE u.expiresAt IS NOT NULL AND u.expiresAt < :now AND u.isActive = true")
-    int deactivateExpiredUrls(@Param("now") LocalDateTime now);
+    @Query("SELECT u.shortCode FROM Url u WHERE u.expiresAt IS NOT NULL AND u.expiresAt < :now AND u.isActive = true")
+    List<String> findExpiredShortCodes(@Param("now") LocalDateTime now);
 
     @Modifying
-    @Query("UPDATE Url u SET u.clickCount = u.clickCount + 1 WHERE u.id = :id")
-    void incrementClickCount(@Param("id") Long id);
+    @Query("UPDATE Url u SET u.isActive = false WHERE u.shortCode IN :shortCodes AND u.expiresAt < :now AND u.isActive = true")
+    int deactivateExpiredByShortCodes(@Param("shortCodes") Collection<String> shortCodes, @Param("now") LocalDateTime now);
+
+    // Returns the short codes that were due for deactivation so callers can evict just those cache entries
+    default List<String> deactivateExpiredUrls(LocalDateTime now) {
+        List<String> shortCodes = findExpiredShortCodes(now);
+        for (int from = 0; from < shortCodes.size(); from += DEACTIVATION_BATCH_SIZE) {
+            int to = Math.min(from + DEACTIVATION_BATCH_SIZE, shortCodes.size());
+            deactivateExpiredByShortCodes(shortCodes.subList(from, to), now);
+        }
+        return shortCodes;
+    }
 
     @Query("SELECT COUNT(u) FROM Url u WHERE u.user = :user")
     long countByUser(@Param("user") User user);
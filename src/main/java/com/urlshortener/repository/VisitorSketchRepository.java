@@ -0,0 +1,146 @@
+package com.urlshortener.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC over the visitor sketch tables; sketches are opaque HyperLogLog bytes here
+@Repository
+@RequiredArgsConstructor
+public class VisitorSketchRepository {
+
+    private static final byte[] EMPTY_SKETCH = new byte[0];
+
+    private static final String INSERT_TOTAL_SQL =
+            "INSERT INTO url_visitor_sketches (url_id, sketch) VALUES (?, ?) ON CONFLICT (url_id) DO NOTHING";
+    private static final String INSERT_DAILY_SQL =
+            "INSERT INTO url_daily_visitor_sketches (url_id, day, sketch) VALUES (?, ?, ?) ON CONFLICT (url_id, day) DO NOTHING";
+
+    private static final String LOCK_TOTALS_SQL = "SELECT url_id, sketch FROM url_visitor_sketches "
+            + "WHERE url_id = ANY(?) ORDER BY url_id FOR UPDATE";
+    private static final String LOCK_DAILY_SQL = "SELECT s.url_id, s.day, s.sketch FROM url_daily_visitor_sketches s "
+            + "JOIN unnest(?::bigint[], ?::date[]) AS k(url_id, day) ON s.url_id = k.url_id AND s.day = k.day "
+            + "ORDER BY s.url_id, s.day FOR UPDATE OF s";
+
+    private static final String UPDATE_TOTAL_SQL = "UPDATE url_visitor_sketches SET sketch = ? WHERE url_id = ?";
+    private static final String UPDATE_DAILY_SQL = "UPDATE url_daily_visitor_sketches SET sketch = ? WHERE url_id = ? AND day = ?";
+
+    private static final String FIND_TOTALS_SQL = "SELECT sketch FROM url_visitor_sketches WHERE url_id = ANY(?)";
+    private static final String FIND_DAILY_SQL = "SELECT sketch FROM url_daily_visitor_sketches "
+            + "WHERE url_id = ANY(?) AND day >= ? AND day <= ?";
+
+    private static final String LOCK_BACKFILL_SQL =
+            "SELECT last_click_id, target_click_id FROM visitor_sketch_backfill WHERE id = 1 FOR UPDATE";
+    private static final String BACKFILL_CLICKS_SQL =
+            "SELECT url_id, clicked_at, ip_bytes FROM click_analytics WHERE id > ? AND id <= ? AND ip_bytes IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must run inside a transaction. Creates missing rows, then locks and returns the stored sketch of every key
+    public Map<Key, byte[]> lockSketches(Collection<Key> keys) {
+        List<Key> totals = new ArrayList<>();
+        List<Key> daily = new ArrayList<>();
+        for (Key key : keys) {
+            (key.day() == null ? totals : daily).add(key);
+        }
+        totals.sort(null);
+        daily.sort(null);
+
+        Map<Key, byte[]> sketches = new HashMap<>();
+        if (!totals.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TOTAL_SQL, totals, totals.size(), (ps, key) -> {
+                ps.setLong(1, key.urlId());
+                ps.setBytes(2, EMPTY_SKETCH);
+            });
+            jdbcTemplate.query(LOCK_TOTALS_SQL, ps -> ps.setArray(1, urlIdArray(ps, totals)),
+                    (RowCallbackHandler) rs -> sketches.put(new Key(rs.getLong(1), null), rs.getBytes(2)));
+        }
+        if (!daily.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_DAILY_SQL, daily, daily.size(), (ps, key) -> {
+                ps.setLong(1, key.urlId());
+                ps.setDate(2, Date.valueOf(key.day()));
+                ps.setBytes(3, EMPTY_SKETCH);
+            });
+            jdbcTemplate.query(LOCK_DAILY_SQL, ps -> {
+                ps.setArray(1, urlIdArray(ps, daily));
+                ps.setArray(2, ps.getConnection().createArrayOf("date",
+                        daily.stream().map(key -> Date.valueOf(key.day())).toArray()));
+            }, (RowCallbackHandler) rs -> sketches.put(
+                    new Key(rs.getLong(1), rs.getDate(2).toLocalDate()), rs.getBytes(3)));
+        }
+        return sketches;
+    }
+
+    public void updateSketches(Map<Key, byte[]> sketches) {
+        List<Map.Entry<Key, byte[]>> totals = new ArrayList<>();
+        List<Map.Entry<Key, byte[]>> daily = new ArrayList<>();
+        for (Map.Entry<Key, byte[]> entry : sketches.entrySet()) {
+            (entry.getKey().day() == null ? totals : daily).add(entry);
+        }
+        jdbcTemplate.batchUpdate(UPDATE_TOTAL_SQL, totals, totals.size(), (ps, entry) -> {
+            ps.setBytes(1, entry.getValue());
+            ps.setLong(2, entry.getKey().urlId());
+        });
+        jdbcTemplate.batchUpdate(UPDATE_DAILY_SQL, daily, daily.size(), (ps, entry) -> {
+            ps.setBytes(1, entry.getValue());
+            ps.setLong(2, entry.getKey().urlId());
+            ps.setDate(3, Date.valueOf(entry.getKey().day()));
+        });
+    }
+
+    public List<byte[]> findSketches(Collection<Long> urlIds) {
+        return jdbcTemplate.query(FIND_TOTALS_SQL, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", urlIds.toArray())),
+                (rs, rowNum) -> rs.getBytes(1));
+    }
+
+    public List<byte[]> findDailySketches(Collection<Long> urlIds, LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(FIND_DAILY_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", urlIds.toArray()));
+            ps.setDate(2, Date.valueOf(from));
+            ps.setDate(3, Date.valueOf(to));
+        }, (rs, rowNum) -> rs.getBytes(1));
+    }
+
+    // Must run inside a transaction; holds the backfill row lock until it ends. Returns {lastClickId, targetClickId}
+    public long[] lockBackfillProgress() {
+        return jdbcTemplate.queryForObject(LOCK_BACKFILL_SQL, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)});
+    }
+
+    // Rows of (url_id, clicked_at, ip_bytes)
+    public void forEachClick(long afterClickId, long toClickId, RowCallbackHandler handler) {
+        jdbcTemplate.query(BACKFILL_CLICKS_SQL, handler, afterClickId, toClickId);
+    }
+
+    public void updateBackfillProgress(long lastClickId) {
+        jdbcTemplate.update("UPDATE visitor_sketch_backfill SET last_click_id = ? WHERE id = 1", lastClickId);
+    }
+
+    private static Array urlIdArray(PreparedStatement ps, List<Key> keys) throws SQLException {
+        return ps.getConnection().createArrayOf("bigint", keys.stream().map(Key::urlId).toArray());
+    }
+
+    // day is null for the all-time sketch
+    public record Key(long urlId, LocalDate day) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(urlId, other.urlId);
+            if (result != 0 || day == null || other.day == null) {
+                return result;
+            }
+            return day.compareTo(other.day);
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class AdminService {
         long totalUrls = urlRepository.count();
         long activeUrls = urlRepository.countActiveUrls();
         long urlsCreatedToday = urlRepository.countUrlsCreatedSince(startOfDay);
-        long totalClicks = clickAnalyticsRepository.count();
+        long totalClicks = clickAnalyticsRepository.sumClickWeights();
         long clicksToday = clickAnalyticsRepository.countClicksSinceDate(startOfDay);
         long clicksThisWeek = clickAnalyticsRepository.countClicksSinceDate(startOfWeek);
         long clicksThisMonth = clickAnalyticsRepository.countClicksSinceDate(startOfMonth);
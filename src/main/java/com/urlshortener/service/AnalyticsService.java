@@ -1,21 +1,54 @@
 package com.urlshortener.service;
 
+import com.urlshortener.analytics.BotDetector;
+import com.urlshortener.analytics.ClickColumnBackfill;
+import com.urlshortener.analytics.ClickCountAccumulator;
+import com.urlshortener.analytics.ClickEvent;
+import com.urlshortener.analytics.ClickRollups;
+import com.urlshortener.analytics.DimensionDictionary;
+import com.urlshortener.analytics.GeoIpResolver;
+import com.urlshortener.analytics.IpAddresses;
+import com.urlshortener.analytics.RefererNormalizer;
+import com.urlshortener.analytics.RepeatClickFilter;
+import com.urlshortener.analytics.SpaceSaving;
+import com.urlshortener.analytics.TopValueSummaries;
+import com.urlshortener.analytics.UserAgentClassifier;
+import com.urlshortener.analytics.VisitorSketches;
+import com.urlshortener.cache.AnalyticsKey;
+import com.urlshortener.cache.SingleFlight;
+import com.urlshortener.config.CacheConfig;
 import com.urlshortener.dto.AnalyticsResponse;
-import com.urlshortener.entity.ClickAnalytics;
+import com.urlshortener.entity.ClickDimension.Dimension;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
 import com.urlshortener.exception.BadRequestException;
 import com.urlshortener.repository.ClickAnalyticsRepository;
+import com.urlshortener.repository.ClickAnalyticsRow;
+import com.urlshortener.repository.ClickCatchUpRepository;
+import com.urlshortener.repository.ClickCatchUpRepository.CaughtUpClick;
+import com.urlshortener.repository.ClickCatchUpRepository.QueuedClick;
+import com.urlshortener.repository.ClickSummaryRepository;
+import com.urlshortener.repository.ClickSummaryRepository.ClickSummary;
 import com.urlshortener.repository.UrlRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,35 +58,182 @@ public class AnalyticsService {
 
     private static final int MAX_USER_AGENT_LENGTH = 512;
     private static final int MAX_REFERER_LENGTH = 2048;
-    private static final int MAX_IP_LENGTH = 45;
+    private static final int TOP_VALUES = 10;
 
     private final ClickAnalyticsRepository clickAnalyticsRepository;
     private final UrlRepository urlRepository;
     private final UrlService urlService;
+    private final ClickCountAccumulator clickCountAccumulator;
+    private final UserAgentClassifier userAgentClassifier;
+    private final RefererNormalizer refererNormalizer;
+    private final BotDetector botDetector;
+    private final RepeatClickFilter repeatClickFilter;
+    private final GeoIpResolver geoIpResolver;
+    private final DimensionDictionary dimensionDictionary;
+    private final ClickRollups clickRollups;
+    private final ClickColumnBackfill clickColumnBackfill;
+    private final ClickSummaryRepository clickSummaryRepository;
+    private final ClickCatchUpRepository clickCatchUpRepository;
+    private final VisitorSketches visitorSketches;
+    private final TopValueSummaries topValueSummaries;
+    private final CacheManager cacheManager;
+    private final SingleFlight<AnalyticsKey, AnalyticsResponse> analyticsLoads;
 
-    @Async
+    // Stored addresses keep only these leading bits; 24 and 48 anonymize to the usual network prefixes
+    @Value("${app.analytics.ip-truncation.ipv4-prefix-length:32}")
+    private int ipv4PrefixLength;
+
+    @Value("${app.analytics.ip-truncation.ipv6-prefix-length:128}")
+    private int ipv6PrefixLength;
+
+    // Called by the click writer threads with one batch of events
     @Transactional
-    public void recordClick(String shortCode, String ipAddress, String userAgent, String referer) {
-        try {
-            Url url = urlService.getUrlByShortCode(shortCode);
+    public void recordClicks(List<ClickEvent> events) {
+        List<ClickAnalyticsRow> rows = new ArrayList<>(events.size());
+        List<String> refererHosts = new ArrayList<>(events.size());
+        List<ClickEvent> repeats = new ArrayList<>();
+        List<ClickEvent> remembered = new ArrayList<>();
+        Set<Long> urlIds = new HashSet<>();
+        // Registered first, so a batch that fails anywhere still rolls back what the dedup filter remembered.
+        // Click counts and top value counts aren't idempotent, so a batch that rolls back and is retried must not be
+        // counted twice. Evicting before commit would let a concurrent request cache the old numbers again
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < rows.size(); i++) {
+                    ClickAnalyticsRow row = rows.get(i);
+                    clickCountAccumulator.add(row.urlId(), row.weight());
+                    topValueSummaries.add(row.urlId(), refererHosts.get(i), row.country(), row.weight());
+                }
+                // Repeats within the dedup window get no row of their own, only their click_count increment if configured
+                if (repeatClickFilter.countsRepeats()) {
+                    for (ClickEvent repeat : repeats) {
+                        clickCountAccumulator.add(repeat.urlId(), repeat.weight());
+                    }
+                }
+                evictAnalytics(urlIds);
+            }
 
-            ClickAnalytics analytics = ClickAnalytics.builder()
-                    .url(url)
-                    .ipAddress(truncate(ipAddress, MAX_IP_LENGTH))
-                    .userAgent(truncate(userAgent, MAX_USER_AGENT_LENGTH))
-                    .referer(truncate(referer, MAX_REFERER_LENGTH))
-                    .deviceType(parseDeviceType(userAgent))
-                    .browser(parseBrowser(userAgent))
-                    .os(parseOperatingSystem(userAgent))
-                    .build();
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    repeatClickFilter.forget(remembered);
+                }
+            }
+        });
 
-            clickAnalyticsRepository.save(analytics);
-            urlService.incrementClickCount(url.getId());
+        for (ClickEvent event : events) {
+            boolean bot = botDetector.isBot(event.userAgent(), event.ipAddress());
+            if (bot && botDetector.action() == BotDetector.Action.DROP) {
+                continue;
+            }
+            if (repeatClickFilter.isRepeat(event)) {
+                repeats.add(event);
+                continue;
+            }
+            if (repeatClickFilter.isEnabled()) {
+                remembered.add(event);
+            }
+            UserAgentClassifier.Classification userAgent = userAgentClassifier.classify(event.userAgent());
+            String refererHost = truncate(refererNormalizer.host(event.referer()), MAX_REFERER_LENGTH);
+            refererHosts.add(refererHost);
+            GeoIpResolver.Location location = geoIpResolver.lookup(event.ipAddress());
+            byte[] ipAddress = IpAddresses.toBytes(event.ipAddress(), ipv4PrefixLength, ipv6PrefixLength);
+            rows.add(new ClickAnalyticsRow(
+                    event.urlId(),
+                    ipAddress,
+                    dimensionDictionary.idFor(Dimension.USER_AGENT, truncate(event.userAgent(), MAX_USER_AGENT_LENGTH)),
+                    dimensionDictionary.idFor(Dimension.REFERER, truncate(event.referer(), MAX_REFERER_LENGTH)),
+                    dimensionDictionary.idFor(Dimension.REFERER_HOST, refererHost),
+                    location != null ? location.country() : null,
+                    location != null ? location.city() : null,
+                    dimensionDictionary.idFor(Dimension.DEVICE_TYPE, userAgent.deviceType()),
+                    dimensionDictionary.idFor(Dimension.BROWSER, userAgent.browser()),
+                    dimensionDictionary.idFor(Dimension.OS, userAgent.operatingSystem()),
+                    event.clickedAt(),
+                    event.weight(),
+                    bot));
+        }
 
-            log.debug("Recorded click for URL: {} from {} via {}", shortCode, ipAddress, parseBrowser(userAgent));
-        } catch (Exception e) {
-            log.error("Failed to record click analytics for URL: {}", shortCode, e);
+        if (!rows.isEmpty()) {
+            clickAnalyticsRepository.insertBatch(rows);
+            clickRollups.record(rows);
         }
+        for (ClickAnalyticsRow row : rows) {
+            visitorSketches.add(row.urlId(), row.clickedAt(), row.ipAddress());
+            urlIds.add(row.urlId());
+        }
+        if (repeatClickFilter.countsRepeats()) {
+            for (ClickEvent repeat : repeats) {
+                urlIds.add(repeat.urlId());
+            }
+        }
+
+        log.debug("Recorded {} clicks of {}, {} repeats", rows.size(), events.size(), repeats.size());
+    }
+
+    /**
+     * Derives what instances of an older release left out for clicks they wrote: the converted
+     * columns, rollups, visitor sketches and top values. Click counts were already added by the
+     * writer. Returns how many queued clicks were taken off the queue.
+     */
+    @Transactional
+    public int catchUpClicks(int limit) {
+        List<QueuedClick> queued = clickCatchUpRepository.lockQueued(limit);
+        List<CaughtUpClick> caughtUp = new ArrayList<>(queued.size());
+        List<ClickAnalyticsRow> rows = new ArrayList<>(queued.size());
+        List<String> refererHosts = new ArrayList<>(queued.size());
+        Set<Long> urlIds = new HashSet<>();
+        for (QueuedClick click : queued) {
+            if (click.urlId() == null) {
+                // Dropped with its partition since it was queued
+                continue;
+            }
+            String refererHost = truncate(refererNormalizer.host(click.referer()), MAX_REFERER_LENGTH);
+            ClickAnalyticsRow row = new ClickAnalyticsRow(
+                    click.urlId(),
+                    click.ipBytes() != null
+                            ? click.ipBytes()
+                            : IpAddresses.toBytes(click.ipAddress(), ipv4PrefixLength, ipv6PrefixLength),
+                    idFor(click.userAgentId(), Dimension.USER_AGENT, truncate(click.userAgent(), MAX_USER_AGENT_LENGTH)),
+                    idFor(click.refererId(), Dimension.REFERER, truncate(click.referer(), MAX_REFERER_LENGTH)),
+                    idFor(click.refererHostId(), Dimension.REFERER_HOST, refererHost),
+                    click.country(),
+                    click.city(),
+                    idFor(click.deviceTypeId(), Dimension.DEVICE_TYPE, click.deviceType()),
+                    idFor(click.browserId(), Dimension.BROWSER, click.browser()),
+                    idFor(click.osId(), Dimension.OS, click.os()),
+                    click.clickedAt(),
+                    click.weight(),
+                    click.bot());
+            caughtUp.add(new CaughtUpClick(click.clickId(), row));
+            rows.add(row);
+            refererHosts.add(refererHost);
+            urlIds.add(row.urlId());
+        }
+        if (queued.isEmpty()) {
+            return 0;
+        }
+
+        // Top value counts aren't idempotent, so like recordClicks they are only added once the transaction commits
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < rows.size(); i++) {
+                    ClickAnalyticsRow row = rows.get(i);
+                    topValueSummaries.add(row.urlId(), refererHosts.get(i), row.country(), row.weight());
+                }
+                evictAnalytics(urlIds);
+            }
+        });
+        clickCatchUpRepository.complete(caughtUp, queued);
+        if (!rows.isEmpty()) {
+            clickRollups.record(rows);
+        }
+        for (ClickAnalyticsRow row : rows) {
+            visitorSketches.add(row.urlId(), row.clickedAt(), row.ipAddress());
+        }
+        return queued.size();
     }
 
     @Transactional(readOnly = true)
@@ -62,31 +242,64 @@ public class AnalyticsService {
         Url url = urlService.getUrlByShortCode(shortCode);
         validateOwnership(url, user);
 
+        // Fetched before computing: a commit evicting the url afterwards orphans this map, so a response computed
+        // from data older than that commit is never served from the cache
+        Map<Integer, AnalyticsResponse> cached = cachedAnalytics(url.getId());
+        AnalyticsResponse response = cached.get(days);
+        if (response != null) {
+            return response;
+        }
+        // Dashboards polling the same url share one computation
+        return analyticsLoads.load(new AnalyticsKey(url.getId(), days), () -> {
+            AnalyticsResponse loaded = cached.get(days);
+            if (loaded == null) {
+                loaded = computeAnalytics(url, days);
+                cached.put(days, loaded);
+            }
+            return loaded;
+        });
+    }
+
+    private AnalyticsResponse computeAnalytics(Url url, int days) {
         LocalDateTime now = LocalDateTime.now();
-        long totalClicks = url.getClickCount();
-        long uniqueVisitors = clickAnalyticsRepository.countUniqueVisitorsByUrl(url);
-        long clicks24h = clickAnalyticsRepository.countClicksSince(url, now.minusHours(24));
-        long clicks7d = clickAnalyticsRepository.countClicksSince(url, now.minusDays(7));
-        long clicks30d = clickAnalyticsRepository.countClicksSince(url, now.minusDays(30));
-
-        List<AnalyticsResponse.DailyClicks> dailyClicks = getDailyClicks(url, days);
-        List<AnalyticsResponse.StatEntry> topCountries = convertToStatEntries(
-                clickAnalyticsRepository.getCountryStats(url), totalClicks);
-        List<AnalyticsResponse.StatEntry> topBrowsers = convertToStatEntries(
-                clickAnalyticsRepository.getBrowserStats(url), totalClicks);
-        List<AnalyticsResponse.StatEntry> topDevices = convertToStatEntries(
-                clickAnalyticsRepository.getDeviceStats(url), totalClicks);
-        List<AnalyticsResponse.StatEntry> topOs = convertToStatEntries(
-                clickAnalyticsRepository.getOsStats(url), totalClicks);
-        List<AnalyticsResponse.StatEntry> topReferers = convertToStatEntries(
-                clickAnalyticsRepository.getRefererStats(url), totalClicks);
+        long totalClicks = url.getClickCount() + clickCountAccumulator.pendingClicks(url.getId());
+        long uniqueVisitors = visitorSketches.isReady()
+                ? visitorSketches.countUniqueVisitors(List.of(url.getId()))
+                : countUniqueVisitorsFromClicks(url, null);
+        long uniqueVisitors7d = countUniqueVisitorsSince(url, now.minusDays(7));
+        long uniqueVisitors30d = countUniqueVisitorsSince(url, now.minusDays(30));
+
+        ClickSummary summary = clickRollups.isReady()
+                ? clickSummaryRepository.summarizeRollups(url.getId(), now, now.minusDays(days))
+                : clickSummaryRepository.summarizeClicks(url.getId(), now, now.minusDays(days));
+        long clicks24h = summary.clicksLast24Hours();
+        long clicks7d = summary.clicksLast7Days();
+        long clicks30d = summary.clicksLast30Days();
+
+        List<AnalyticsResponse.DailyClicks> dailyClicks = summary.dailyClicks().stream()
+                .map(row -> AnalyticsResponse.DailyClicks.builder()
+                        .date(row[0].toString())
+                        .clicks((Long) row[1])
+                        .build())
+                .collect(Collectors.toList());
+        Map<Dimension, List<SpaceSaving.Entry>> summarized = topValueSummaries.isReady()
+                ? topValueSummaries.top(url.getId(), TOP_VALUES)
+                : Map.of();
+        List<AnalyticsResponse.StatEntry> topCountries = topValues(summary, summarized, Dimension.COUNTRY, totalClicks);
+        List<AnalyticsResponse.StatEntry> topBrowsers = topValues(summary, Dimension.BROWSER, totalClicks);
+        List<AnalyticsResponse.StatEntry> topDevices = topValues(summary, Dimension.DEVICE_TYPE, totalClicks);
+        List<AnalyticsResponse.StatEntry> topOs = topValues(summary, Dimension.OS, totalClicks);
+        List<AnalyticsResponse.StatEntry> topReferers = topValues(summary, summarized, Dimension.REFERER_HOST, totalClicks);
 
         log.debug("Analytics for {} - clicks: {}, unique: {}, 24h: {}, 7d: {}, 30d: {}",
-                shortCode, totalClicks, uniqueVisitors, clicks24h, clicks7d, clicks30d);
+                url.getShortCode(), totalClicks, uniqueVisitors, clicks24h, clicks7d, clicks30d);
 
         return AnalyticsResponse.builder()
                 .totalClicks(totalClicks)
+                .humanClicks(Math.max(0, totalClicks - summary.botClicks()))
                 .uniqueVisitors(uniqueVisitors)
+                .uniqueVisitorsLast7Days(uniqueVisitors7d)
+                .uniqueVisitorsLast30Days(uniqueVisitors30d)
                 .clicksLast24Hours(clicks24h)
                 .clicksLast7Days(clicks7d)
                 .clicksLast30Days(clicks30d)
@@ -96,24 +309,50 @@ public class AnalyticsService {
                 .topDevices(topDevices)
                 .topOperatingSystems(topOs)
                 .topReferers(topReferers)
+                .generatedAt(now)
                 .build();
     }
 
-    private List<AnalyticsResponse.DailyClicks> getDailyClicks(Url url, int days) {
-        LocalDateTime startDate = LocalDateTime.now().minusDays(days);
-        List<Object[]> results = clickAnalyticsRepository.getDailyClickStats(url, startDate);
+    private List<AnalyticsResponse.StatEntry> topValues(ClickSummary summary, Dimension dimension, long totalClicks) {
+        return convertToStatEntries(resolveDimensionNames(summary.topValues(dimension)), totalClicks);
+    }
 
-        return results.stream()
-                .map(row -> AnalyticsResponse.DailyClicks.builder()
-                        .date(row[0].toString())
-                        .clicks((Long) row[1])
-                        .build())
-                .collect(Collectors.toList());
+    // Referer hosts and countries come from the Space-Saving summaries once they cover every click
+    private List<AnalyticsResponse.StatEntry> topValues(ClickSummary summary, Map<Dimension, List<SpaceSaving.Entry>> summarized,
+                                                        Dimension dimension, long totalClicks) {
+        List<SpaceSaving.Entry> entries = summarized.get(dimension);
+        if (entries == null) {
+            return topValues(summary, dimension, totalClicks);
+        }
+        List<Object[]> stats = new ArrayList<>(entries.size());
+        for (SpaceSaving.Entry entry : entries) {
+            stats.add(new Object[]{entry.value(), entry.count(), entry.error()});
+        }
+        return convertToStatEntries(stats, totalClicks);
+    }
+
+    // Day sketches cover whole days, so the sketch estimate also counts visitors earlier on the first day
+    private long countUniqueVisitorsSince(Url url, LocalDateTime since) {
+        return visitorSketches.isReady()
+                ? visitorSketches.countUniqueVisitors(List.of(url.getId()), since.toLocalDate(), LocalDate.now())
+                : countUniqueVisitorsFromClicks(url, since);
+    }
+
+    // While the column backfill runs, an address seen both before and after conversion counts twice
+    private long countUniqueVisitorsFromClicks(Url url, LocalDateTime since) {
+        long visitors = since == null
+                ? clickAnalyticsRepository.countUniqueVisitorsByUrl(url)
+                : clickAnalyticsRepository.countUniqueVisitorsSince(url, since);
+        if (clickColumnBackfill.hasUnconvertedClicks()) {
+            visitors += since == null
+                    ? clickAnalyticsRepository.countUnconvertedVisitorsByUrl(url.getId())
+                    : clickAnalyticsRepository.countUnconvertedVisitorsSince(url.getId(), since);
+        }
+        return visitors;
     }
 
     private List<AnalyticsResponse.StatEntry> convertToStatEntries(List<Object[]> stats, long totalClicks) {
         return stats.stream()
-                .limit(10)
                 .map(row -> {
                     String name = row[0] != null ? row[0].toString() : "Unknown";
                     Long count = (Long) row[1];
@@ -122,60 +361,52 @@ public class AnalyticsService {
                             .name(name)
                             .count(count)
                             .percentage(Math.round(percentage * 100.0) / 100.0)
+                            .maxError(row.length > 2 ? (Long) row[2] : null)
                             .build();
                 })
                 .collect(Collectors.toList());
     }
 
-    private String parseDeviceType(String userAgent) {
-        if (userAgent == null) return "Unknown";
-        userAgent = userAgent.toLowerCase();
-
-        if (userAgent.contains("mobile") || (userAgent.contains("android") && !userAgent.contains("tablet"))) {
-            return "Mobile";
-        } else if (userAgent.contains("tablet") || userAgent.contains("ipad")) {
-            return "Tablet";
-        } else {
-            return "Desktop";
+    // Replaces click_dimensions ids in the first column of each stat row with their values; raw countries are already names
+    private List<Object[]> resolveDimensionNames(List<Object[]> stats) {
+        Set<Integer> ids = new HashSet<>();
+        for (Object[] row : stats) {
+            if (row[0] instanceof Integer id) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return stats;
+        }
+        Map<Integer, String> names = dimensionDictionary.valuesFor(ids);
+        for (Object[] row : stats) {
+            if (row[0] instanceof Integer id) {
+                row[0] = names.get(id);
+            }
         }
+        return stats;
     }
 
-    private String parseBrowser(String userAgent) {
-        if (userAgent == null) return "Unknown";
-        userAgent = userAgent.toLowerCase();
-
-        if (userAgent.contains("edg")) {
-            return "Edge";
-        } else if (userAgent.contains("opera") || userAgent.contains("opr")) {
-            return "Opera";
-        } else if (userAgent.contains("chrome") && !userAgent.contains("edg")) {
-            return "Chrome";
-        } else if (userAgent.contains("firefox")) {
-            return "Firefox";
-        } else if (userAgent.contains("safari") && !userAgent.contains("chrome")) {
-            return "Safari";
-        } else {
-            return "Other";
+    // One invalidation per url, however many day ranges it has cached
+    private void evictAnalytics(Set<Long> urlIds) {
+        Cache cache = analyticsCache();
+        for (Long urlId : urlIds) {
+            cache.evict(urlId);
         }
     }
 
-    private String parseOperatingSystem(String userAgent) {
-        if (userAgent == null) return "Unknown";
-        userAgent = userAgent.toLowerCase();
+    // The "analytics" cache maps a url id to its responses by days
+    private Map<Integer, AnalyticsResponse> cachedAnalytics(long urlId) {
+        return analyticsCache().get(urlId, () -> new ConcurrentHashMap<Integer, AnalyticsResponse>());
+    }
 
-        if (userAgent.contains("windows")) {
-            return "Windows";
-        } else if (userAgent.contains("mac os") || userAgent.contains("macintosh")) {
-            return "macOS";
-        } else if (userAgent.contains("linux") && !userAgent.contains("android")) {
-            return "Linux";
-        } else if (userAgent.contains("android")) {
-            return "Android";
-        } else if (userAgent.contains("iphone") || userAgent.contains("ipad") || userAgent.contains("ios")) {
-            return "iOS";
-        } else {
-            return "Other";
-        }
+    private Cache analyticsCache() {
+        return Objects.requireNonNull(cacheManager.getCache(CacheConfig.ANALYTICS_CACHE), "analytics cache is not configured");
+    }
+
+    // The click's id when its writer derived one; releases before the dictionary wrote only the text value
+    private Integer idFor(Integer id, Dimension dimension, String value) {
+        return id != null ? id : dimensionDictionary.idFor(dimension, value);
     }
 
     private String truncate(String value, int maxLength) {
@@ -185,7 +416,8 @@ public class AnalyticsService {
         return value.substring(0, maxLength);
     }
 
-    private void validateOwnership(Url url, User user) {
+    // Also guards click exports
+    public void validateOwnership(Url url, User user) {
         if (url.getUser() == null || !url.getUser().getId().equals(user.getId())) {
             throw new BadRequestException("You don't have permission to access analytics for this URL");
         }
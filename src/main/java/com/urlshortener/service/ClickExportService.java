@@ -0,0 +1,227 @@
+package com.urlshortener.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.urlshortener.analytics.ClickColumnBackfill;
+import com.urlshortener.analytics.IpAddresses;
+import com.urlshortener.entity.Url;
+import com.urlshortener.entity.User;
+import com.urlshortener.exception.BadRequestException;
+import com.urlshortener.exception.RateLimitExceededException;
+import com.urlshortener.repository.ClickExportRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a url's raw clicks as NDJSON or CSV. Rows go from the database cursor straight to the
+ * response stream one at a time, so memory use doesn't depend on how many clicks are exported.
+ *
+ * <p>An export holds a database connection and a thread for as long as the client keeps reading,
+ * so at most max-concurrent run at once; further requests get 429 before their response starts.
+ */
+@Slf4j
+@Service
+public class ClickExportService {
+
+    private static final String[] COLUMNS = {
+            "clickedAt", "ipAddress", "country", "city", "deviceType", "browser", "os", "referer", "userAgent", "weight", "bot"
+    };
+
+    private final UrlService urlService;
+    private final AnalyticsService analyticsService;
+    private final ClickExportRepository clickExportRepository;
+    private final ClickColumnBackfill clickColumnBackfill;
+    private final ObjectMapper objectMapper;
+    private final Semaphore slots;
+    private final Counter rejected;
+
+    public ClickExportService(UrlService urlService,
+                              AnalyticsService analyticsService,
+                              ClickExportRepository clickExportRepository,
+                              ClickColumnBackfill clickColumnBackfill,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.analytics.export.max-concurrent:4}") int maxConcurrent) {
+        this.urlService = urlService;
+        this.analyticsService = analyticsService;
+        this.clickExportRepository = clickExportRepository;
+        this.clickColumnBackfill = clickColumnBackfill;
+        this.objectMapper = objectMapper;
+        this.slots = new Semaphore(maxConcurrent);
+        this.rejected = Counter.builder("clicks.export.rejected")
+                .description("Click exports refused because max-concurrent were already running")
+                .register(meterRegistry);
+        Gauge.builder("clicks.export.active", slots, s -> maxConcurrent - s.availablePermits())
+                .description("Click exports currently streaming")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checked before the response starts, while errors can still be reported as such. Takes one
+     * of the export slots, which the following writeClicks call gives back when it ends.
+     */
+    public Url prepareExport(String shortCode, User user, LocalDateTime from, LocalDateTime to) {
+        Url url = urlService.getUrlByShortCode(shortCode);
+        analyticsService.validateOwnership(url, user);
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BadRequestException("'from' must be before 'to'");
+        }
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            throw new RateLimitExceededException("Too many click exports in progress. Please try again later.");
+        }
+        return url;
+    }
+
+    public void writeClicks(long urlId, Format format, LocalDateTime from, LocalDateTime to, boolean gzip,
+                            OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        long[] rows = new long[1];
+        try {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : out;
+            if (format == Format.CSV) {
+                writeCsv(urlId, from, to, target, rows);
+            } else {
+                writeNdjson(urlId, from, to, target, rows);
+            }
+            if (target instanceof GZIPOutputStream gzipOut) {
+                gzipOut.finish();
+            }
+            target.flush();
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; the cursor and its transaction are already closed
+            throw e.getCause();
+        } finally {
+            slots.release();
+        }
+        log.info("Exported {} clicks of url {} as {} in {} ms", rows[0], urlId, format, System.currentTimeMillis() - start);
+    }
+
+    private void writeNdjson(long urlId, LocalDateTime from, LocalDateTime to, OutputStream out, long[] rows) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Each object ends its own line instead of Jackson's default space between root values
+        json.setRootValueSeparator(null);
+        stream(urlId, from, to, rs -> {
+            try {
+                json.writeStartObject();
+                json.writeStringField(COLUMNS[0], clickedAt(rs));
+                for (int column = 2; column <= 9; column++) {
+                    json.writeStringField(COLUMNS[column - 1], text(rs, column));
+                }
+                json.writeNumberField(COLUMNS[9], rs.getInt(10));
+                json.writeBooleanField(COLUMNS[10], rs.getBoolean(11));
+                json.writeEndObject();
+                json.writeRaw('\n');
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        json.close();
+    }
+
+    private void writeCsv(long urlId, LocalDateTime from, LocalDateTime to, OutputStream out, long[] rows) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write(String.join(",", COLUMNS));
+        csv.write("\r\n");
+        stream(urlId, from, to, rs -> {
+            try {
+                csv.write(clickedAt(rs));
+                for (int column = 2; column <= 9; column++) {
+                    csv.write(',');
+                    writeCsvField(csv, text(rs, column));
+                }
+                csv.write(',');
+                csv.write(Integer.toString(rs.getInt(10)));
+                csv.write(',');
+                csv.write(Boolean.toString(rs.getBoolean(11)));
+                csv.write("\r\n");
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        csv.flush();
+    }
+
+    private void stream(long urlId, LocalDateTime from, LocalDateTime to, RowCallbackHandler handler) {
+        clickExportRepository.forEachClick(urlId, from, to, clickColumnBackfill.hasUnconvertedClicks(), handler);
+    }
+
+    private static String clickedAt(ResultSet rs) throws SQLException {
+        return rs.getTimestamp(1).toLocalDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    // Addresses are exported in the canonical text form of ip_bytes; clicks not yet converted keep their text as received
+    private static String text(ResultSet rs, int column) throws SQLException {
+        if (column == 2) {
+            byte[] ipBytes = rs.getBytes(12);
+            return ipBytes != null ? IpAddresses.format(ipBytes) : rs.getString(column);
+        }
+        return rs.getString(column);
+    }
+
+    // RFC 4180: fields with separators, quotes or line breaks are quoted, quotes doubled
+    private static void writeCsvField(Writer csv, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            csv.write(value);
+            return;
+        }
+        csv.write('"');
+        csv.write(value.replace("\"", "\"\""));
+        csv.write('"');
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new BadRequestException("Unsupported export format: " + value);
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package com.urlshortener.service;
 
+import com.urlshortener.analytics.ClickCountAccumulator;
+import com.urlshortener.cache.RedirectTarget;
+import com.urlshortener.cache.ShortCodeFilter;
+import com.urlshortener.cache.SingleFlight;
+import com.urlshortener.config.CacheConfig;
 import com.urlshortener.dto.CreateUrlRequest;
 import com.urlshortener.dto.UrlResponse;
 import com.urlshortener.entity.Url;
 import com.urlshortener.entity.User;
 import com.urlshortener.exception.BadRequestException;
 import com.urlshortener.exception.ResourceNotFoundException;
+import com.urlshortener.repository.UrlLookup;
 import com.urlshortener.repository.UrlRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -21,6 +27,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
 
 @Slf4j
 @Service
@@ -30,6 +38,9 @@ public class UrlService {
     private final UrlRepository urlRepository;
     private final Base62Encoder base62Encoder;
     private final CacheManager cacheManager;
+    private final ShortCodeFilter shortCodeFilter;
+    private final SingleFlight<String, RedirectTarget> redirectTargetLoads;
+    private final ClickCountAccumulator clickCountAccumulator;
 
     @Value("${app.base-url}")
     private String baseUrl;
@@ -86,29 +97,41 @@ public class UrlService {
                 .build();
 
         url = urlRepository.save(url);
+        shortCodeFilter.markCreated(shortCode);
         log.info("Created short URL: {} (target length: {}) by user: {}", shortCode, request.getUrl().length(),
                 user != null ? user.getEmail() : "anonymous");
 
         return mapToResponse(url);
     }
 
-    @Cacheable(value = "urls", key = "#shortCode")
-    @Transactional(readOnly = true)
-    public String getOriginalUrl(String shortCode) {
-        Url url = urlRepository.findByShortCode(shortCode)
-                .orElseThrow(() -> new ResourceNotFoundException("URL", "shortCode", shortCode));
+    public RedirectTarget resolveRedirect(String shortCode) {
+        Cache urlCache = urlCache();
+        RedirectTarget target = urlCache.get(shortCode, RedirectTarget.class);
+        if (target == null) {
+            // Concurrent misses for the same code share one database load
+            target = redirectTargetLoads.load(shortCode, () -> {
+                // A load that completed between our miss and becoming leader has already filled the cache
+                RedirectTarget cached = urlCache.get(shortCode, RedirectTarget.class);
+                if (cached != null) {
+                    return cached;
+                }
+                RedirectTarget loaded = loadRedirectTarget(shortCode);
+                urlCache.put(shortCode, loaded);
+                return loaded;
+            });
+        }
 
-        if (!url.getIsActive()) {
+        if (!target.active()) {
             log.debug("Access attempt on deactivated URL: {}", shortCode);
             throw new ResourceNotFoundException("URL has been deactivated");
         }
 
-        if (url.isExpired()) {
+        if (target.isExpired(LocalDateTime.now())) {
             log.debug("Access attempt on expired URL: {}", shortCode);
             throw new ResourceNotFoundException("URL has expired");
         }
 
-        return url.getOriginalUrl();
+        return target;
     }
 
     @Transactional(readOnly = true)
@@ -132,7 +155,7 @@ public class UrlService {
                 .map(this::mapToResponse);
     }
 
-    @CacheEvict(value = "urls", key = "#shortCode")
+    @CacheEvict(value = CacheConfig.URLS_CACHE, key = "#shortCode")
     @Transactional
     public UrlResponse updateUrl(String shortCode, CreateUrlRequest request, User user) {
         Url url = getUrlByShortCode(shortCode);
@@ -156,7 +179,7 @@ public class UrlService {
         return mapToResponse(url);
     }
 
-    @CacheEvict(value = "urls", key = "#shortCode")
+    @CacheEvict(value = CacheConfig.URLS_CACHE, key = "#shortCode")
     @Transactional
     public void deleteUrl(String shortCode, User user) {
         Url url = getUrlByShortCode(shortCode);
@@ -171,27 +194,38 @@ public class UrlService {
         log.info("Deactivated URL: {}", shortCode);
     }
 
-    @Transactional
-    public void incrementClickCount(Long urlId) {
-        urlRepository.incrementClickCount(urlId);
-    }
-
     @Scheduled(cron = "0 0 * * * *") // Run every hour
     @Transactional
     public void deactivateExpiredUrls() {
         log.debug("Starting scheduled expired URL cleanup");
-        int count = urlRepository.deactivateExpiredUrls(LocalDateTime.now());
-        if (count > 0) {
-            var urlCache = cacheManager.getCache("urls");
-            if (urlCache != null) {
-                urlCache.clear();
-            }
-            log.info("Deactivated {} expired URLs and cleared URL cache", count);
+        List<String> shortCodes = urlRepository.deactivateExpiredUrls(LocalDateTime.now());
+        if (!shortCodes.isEmpty()) {
+            Cache urlCache = urlCache();
+            shortCodes.forEach(urlCache::evict);
+            log.info("Deactivated {} expired URLs and evicted their cache entries", shortCodes.size());
         } else {
             log.debug("No expired URLs to deactivate");
         }
     }
 
+    private RedirectTarget loadRedirectTarget(String shortCode) {
+        // Bloom filter and negative cache let scanner probes 404 without touching the database
+        if (shortCodeFilter.isDefinitelyMissing(shortCode)) {
+            throw new ResourceNotFoundException("URL", "shortCode", shortCode);
+        }
+
+        UrlLookup lookup = urlRepository.findLookupByShortCode(shortCode).orElse(null);
+        if (lookup == null) {
+            shortCodeFilter.markMissing(shortCode);
+            throw new ResourceNotFoundException("URL", "shortCode", shortCode);
+        }
+        return RedirectTarget.from(lookup);
+    }
+
+    private Cache urlCache() {
+        return Objects.requireNonNull(cacheManager.getCache(CacheConfig.URLS_CACHE), "urls cache is not configured");
+    }
+
     private void validateUrl(String url) {
         if (!URL_VALIDATOR.isValid(url)) {
             log.debug("Invalid URL format rejected (length: {})", url.length());
@@ -256,7 +290,7 @@ public class UrlService {
                 .shortCode(url.getShortCode())
                 .shortUrl(baseUrl + "/" + url.getShortCode())
                 .originalUrl(url.getOriginalUrl())
-                .clickCount(url.getClickCount())
+                .clickCount(url.getClickCount() + clickCountAccumulator.pendingClicks(url.getId()))
                 .customAlias(url.getCustomAlias())
                 .isActive(url.getIsActive())
                 .expired(url.isExpired())
@@ -0,0 +1,47 @@
+-- Referer breakdowns group on the referer's normalized host instead of the full referer text.
+-- Adding the column rewrites nothing; ClickColumnBackfill fills it in for existing clicks in batches.
+-- Existing daily rollups get their host from the regular expression below, which follows RefererNormalizer:
+-- lowercased, without user info (up to the last "@"), port, trailing dots or a leading "www.", and no host at all
+-- when it has characters a host can't have. RefererNormalizerTest checks the two agree
+ALTER TABLE click_analytics ADD COLUMN referer_host_id INTEGER;
+
+UPDATE click_column_backfill
+SET last_click_id = 0, target_click_id = (SELECT COALESCE(MAX(id), 0) FROM click_analytics)
+WHERE id = 1;
+
+CREATE TEMPORARY TABLE referer_hosts AS
+SELECT id AS referer_id,
+       NULLIF(regexp_replace(rtrim(lower(substring(dimension_value
+           FROM '^\s*(?:[A-Za-z][A-Za-z0-9+.-]*:)?//(?:[^/?#]*@)?(\[[[:alnum:]._%:-]*\]|[[:alnum:]._%-]+(?=[:/?#]|\s*$))')), '.'),
+           '^www\.(.)', '\1'), '') AS host
+FROM click_dimensions
+WHERE dimension = 'REFERER';
+
+INSERT INTO click_dimensions (dimension, dimension_value, value_md5)
+SELECT DISTINCT 'REFERER_HOST', host, md5(host) FROM referer_hosts WHERE host IS NOT NULL
+ON CONFLICT (dimension, value_md5) DO NOTHING;
+
+CREATE TEMPORARY TABLE referer_host_ids AS
+SELECT r.referer_id, d.id AS host_id
+FROM referer_hosts r
+JOIN click_dimensions d ON d.dimension = 'REFERER_HOST' AND d.value_md5 = md5(r.host);
+
+-- Daily rollups are regrouped by host; referers without one join the missing-value row
+INSERT INTO click_rollups_daily (url_id, dimension, bucket_start, value_id, clicks)
+SELECT r.url_id, 'REFERER_HOST', r.bucket_start, COALESCE(m.host_id, 0), SUM(r.clicks)
+FROM click_rollups_daily r
+LEFT JOIN referer_host_ids m ON m.referer_id = r.value_id
+WHERE r.dimension = 'REFERER'
+GROUP BY 1, 2, 3, 4;
+
+DELETE FROM click_rollups_daily WHERE dimension = 'REFERER';
+
+DROP TABLE referer_host_ids;
+DROP TABLE referer_hosts;
+
+-- The top referer summaries ranked hosts parsed differently; rebuild them from the new column once it is filled in
+TRUNCATE url_top_values;
+
+UPDATE top_value_backfill
+SET last_click_id = 0, target_click_id = (SELECT COALESCE(MAX(id), 0) FROM click_analytics)
+WHERE id = 1;
@@ -0,0 +1,2 @@
+-- Clicks recognized as crawlers or link previews at ingest; a constant default adds the column without rewriting the table
+ALTER TABLE click_analytics ADD COLUMN is_bot BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1,4 @@
+-- Catches clicks outside every monthly partition, e.g. when maintenance has fallen behind or a relayed
+-- click is older than the oldest month, so they no longer fail the whole batch insert.
+-- ClickPartitionMaintenance moves them into proper monthly partitions.
+CREATE TABLE click_analytics_default PARTITION OF click_analytics DEFAULT;
@@ -0,0 +1,24 @@
+-- Backfills cover clicks up to the id their migration saw. Instances of the previous release that keep writing during
+-- a rolling deploy add clicks past that id without the rollups, sketches, top values and columns this release derives
+-- at ingest. New instances write writer_version explicitly; rows that get the default came from older code, and the
+-- trigger queues them for the catch-up job. A release that derives more at ingest bumps the version and the condition
+ALTER TABLE click_analytics ADD COLUMN writer_version SMALLINT NOT NULL DEFAULT 0;
+
+CREATE TABLE click_catch_up (
+    click_id BIGINT NOT NULL,
+    clicked_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (click_id, clicked_at)
+);
+
+CREATE FUNCTION queue_click_catch_up() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO click_catch_up (click_id, clicked_at) VALUES (NEW.id, NEW.clicked_at);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Defined on the partitioned table, so every partition, including ones attached later, gets it
+CREATE TRIGGER click_analytics_catch_up
+    AFTER INSERT ON click_analytics
+    FOR EACH ROW WHEN (NEW.writer_version < 1)
+    EXECUTE FUNCTION queue_click_catch_up();
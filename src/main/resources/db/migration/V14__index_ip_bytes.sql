@@ -0,0 +1,9 @@
+-- Unique-visitor fallbacks count distinct ip_bytes, so the per-url address index moves from the text column to the
+-- bytes. New clicks no longer write ip_address and ClickColumnBackfill clears it as it converts older clicks, along
+-- with V4's text dimension columns; once every click is converted it drops all of them, drop-text-columns-after
+-- after completed_at
+CREATE INDEX idx_click_analytics_url_ip_bytes ON click_analytics(url_id, ip_bytes);
+DROP INDEX idx_click_analytics_url_ip;
+
+ALTER TABLE click_column_backfill ADD COLUMN completed_at TIMESTAMP;
+ALTER TABLE click_column_backfill ADD COLUMN text_columns_dropped BOOLEAN NOT NULL DEFAULT FALSE;
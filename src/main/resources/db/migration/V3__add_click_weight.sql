@@ -0,0 +1,2 @@
+-- Number of real clicks a row stands for; above 1 when click ingestion samples under load
+ALTER TABLE click_analytics ADD COLUMN weight INTEGER NOT NULL DEFAULT 1;
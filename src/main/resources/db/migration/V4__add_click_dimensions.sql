@@ -0,0 +1,30 @@
+-- Dictionary of repeated click_analytics values; click rows keep only the integer id.
+-- Values are unique by their MD5: 2048 characters can take up to 8 KB, more than a btree entry may hold
+CREATE TABLE click_dimensions (
+    id SERIAL PRIMARY KEY,
+    dimension VARCHAR(20) NOT NULL,
+    dimension_value VARCHAR(2048) NOT NULL,
+    value_md5 CHAR(32) NOT NULL,
+    CONSTRAINT uk_click_dimensions_value_md5 UNIQUE (dimension, value_md5)
+);
+
+-- No foreign keys: dictionary rows are never deleted, and five FK checks per click insert add up.
+-- Adding nullable columns rewrites nothing: new clicks get the ids, and ClickColumnBackfill looks up existing clicks'
+-- text values in batches. The text columns stay, as instances of the previous release still insert them, until the
+-- backfill has finished; it then drops them (see V14)
+ALTER TABLE click_analytics
+    ADD COLUMN device_type_id INTEGER,
+    ADD COLUMN browser_id INTEGER,
+    ADD COLUMN os_id INTEGER,
+    ADD COLUMN referer_id INTEGER,
+    ADD COLUMN user_agent_id INTEGER;
+
+-- Progress of converting clicks written before this migration; the single row doubles as the backfill lock
+CREATE TABLE click_column_backfill (
+    id INTEGER PRIMARY KEY,
+    last_click_id BIGINT NOT NULL,
+    target_click_id BIGINT NOT NULL
+);
+
+INSERT INTO click_column_backfill (id, last_click_id, target_click_id)
+SELECT 1, 0, COALESCE(MAX(id), 0) FROM click_analytics;
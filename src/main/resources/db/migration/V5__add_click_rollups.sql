@@ -0,0 +1,29 @@
+-- Click counts per url and bucket, maintained as click batches are written.
+-- value_id is a click_dimensions id, or 0 for the TOTAL dimension and for missing values.
+CREATE TABLE click_rollups_hourly (
+    url_id BIGINT NOT NULL REFERENCES urls(id) ON DELETE CASCADE,
+    dimension VARCHAR(20) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    value_id INTEGER NOT NULL,
+    clicks BIGINT NOT NULL,
+    PRIMARY KEY (url_id, dimension, bucket_start, value_id)
+);
+
+CREATE TABLE click_rollups_daily (
+    url_id BIGINT NOT NULL REFERENCES urls(id) ON DELETE CASCADE,
+    dimension VARCHAR(20) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    value_id INTEGER NOT NULL,
+    clicks BIGINT NOT NULL,
+    PRIMARY KEY (url_id, dimension, bucket_start, value_id)
+);
+
+-- Progress of rolling up clicks written before this migration; the single row doubles as the backfill lock
+CREATE TABLE click_rollup_backfill (
+    id INTEGER PRIMARY KEY,
+    last_click_id BIGINT NOT NULL,
+    target_click_id BIGINT NOT NULL
+);
+
+INSERT INTO click_rollup_backfill (id, last_click_id, target_click_id)
+SELECT 1, 0, COALESCE(MAX(id), 0) FROM click_analytics;
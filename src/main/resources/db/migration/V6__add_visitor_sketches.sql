@@ -0,0 +1,22 @@
+-- HyperLogLog sketches of visitor IPs, all-time and per day, merged as clicks are ingested
+CREATE TABLE url_visitor_sketches (
+    url_id BIGINT PRIMARY KEY REFERENCES urls(id) ON DELETE CASCADE,
+    sketch BYTEA NOT NULL
+);
+
+CREATE TABLE url_daily_visitor_sketches (
+    url_id BIGINT NOT NULL REFERENCES urls(id) ON DELETE CASCADE,
+    day DATE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (url_id, day)
+);
+
+-- Progress of sketching clicks written before this migration; the single row doubles as the backfill lock
+CREATE TABLE visitor_sketch_backfill (
+    id INTEGER PRIMARY KEY,
+    last_click_id BIGINT NOT NULL,
+    target_click_id BIGINT NOT NULL
+);
+
+INSERT INTO visitor_sketch_backfill (id, last_click_id, target_click_id)
+SELECT 1, 0, COALESCE(MAX(id), 0) FROM click_analytics;
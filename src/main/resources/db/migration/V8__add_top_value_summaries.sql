@@ -0,0 +1,17 @@
+-- Space-Saving summaries of each url's most clicked referer hosts and countries, merged as clicks are ingested
+CREATE TABLE url_top_values (
+    url_id BIGINT NOT NULL REFERENCES urls(id) ON DELETE CASCADE,
+    dimension VARCHAR(20) NOT NULL,
+    summary BYTEA NOT NULL,
+    PRIMARY KEY (url_id, dimension)
+);
+
+-- Progress of summarizing clicks written before this migration; the single row doubles as the backfill lock
+CREATE TABLE top_value_backfill (
+    id INTEGER PRIMARY KEY,
+    last_click_id BIGINT NOT NULL,
+    target_click_id BIGINT NOT NULL
+);
+
+INSERT INTO top_value_backfill (id, last_click_id, target_click_id)
+SELECT 1, 0, COALESCE(MAX(id), 0) FROM click_analytics;
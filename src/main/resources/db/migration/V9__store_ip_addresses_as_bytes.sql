@@ -0,0 +1,15 @@
+-- Client IPs are also stored in their canonical 16-byte form, IPv4 as IPv4-mapped IPv6, so distinct counts and
+-- sketches compare fixed-width bytes instead of text. Adding a nullable column rewrites nothing: new clicks get both
+-- columns, and ClickColumnBackfill converts existing ones in batches. ip_address stays until every reader has moved
+ALTER TABLE click_analytics ADD COLUMN ip_bytes BYTEA;
+
+UPDATE click_column_backfill
+SET last_click_id = 0, target_click_id = (SELECT COALESCE(MAX(id), 0) FROM click_analytics)
+WHERE id = 1;
+
+-- Sketches hashed the old text form; start them over so the backfill rebuilds them from ip_bytes once converted
+TRUNCATE url_visitor_sketches, url_daily_visitor_sketches;
+
+UPDATE visitor_sketch_backfill
+SET last_click_id = 0, target_click_id = (SELECT COALESCE(MAX(id), 0) FROM click_analytics)
+WHERE id = 1;
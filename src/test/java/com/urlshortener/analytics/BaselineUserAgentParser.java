@@ -0,0 +1,61 @@
+package com.urlshortener.analytics;
+
+// How AnalyticsService classified user agents before UserAgentClassifier: a lowercase copy and contains() chains per field
+final class BaselineUserAgentParser {
+
+    private BaselineUserAgentParser() {
+    }
+
+    static UserAgentClassifier.Classification classify(String userAgent) {
+        if (userAgent == null) {
+            return UserAgentClassifier.UNKNOWN;
+        }
+        return new UserAgentClassifier.Classification(
+                parseDeviceType(userAgent), parseBrowser(userAgent), parseOperatingSystem(userAgent));
+    }
+
+    static String parseDeviceType(String userAgent) {
+        userAgent = userAgent.toLowerCase();
+        if (userAgent.contains("mobile") || (userAgent.contains("android") && !userAgent.contains("tablet"))) {
+            return "Mobile";
+        } else if (userAgent.contains("tablet") || userAgent.contains("ipad")) {
+            return "Tablet";
+        } else {
+            return "Desktop";
+        }
+    }
+
+    static String parseBrowser(String userAgent) {
+        userAgent = userAgent.toLowerCase();
+        if (userAgent.contains("edg")) {
+            return "Edge";
+        } else if (userAgent.contains("opera") || userAgent.contains("opr")) {
+            return "Opera";
+        } else if (userAgent.contains("chrome") && !userAgent.contains("edg")) {
+            return "Chrome";
+        } else if (userAgent.contains("firefox")) {
+            return "Firefox";
+        } else if (userAgent.contains("safari") && !userAgent.contains("chrome")) {
+            return "Safari";
+        } else {
+            return "Other";
+        }
+    }
+
+    static String parseOperatingSystem(String userAgent) {
+        userAgent = userAgent.toLowerCase();
+        if (userAgent.contains("windows")) {
+            return "Windows";
+        } else if (userAgent.contains("mac os") || userAgent.contains("macintosh")) {
+            return "macOS";
+        } else if (userAgent.contains("linux") && !userAgent.contains("android")) {
+            return "Linux";
+        } else if (userAgent.contains("android")) {
+            return "Android";
+        } else if (userAgent.contains("iphone") || userAgent.contains("ipad") || userAgent.contains("ios")) {
+            return "iOS";
+        } else {
+            return "Other";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-click cost of bot detection: the token matcher alone, the IP range search alone, and both
+ * together, against a lowercase-and-contains loop over the same tokens as the baseline. Runs
+ * with the GC profiler, so allocations per click are reported too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BotDetectorBenchmark {
+
+    // The default list from application.yml
+    private static final String TOKENS = "bot,crawl,spider,slurp,facebookexternalhit,facebookcatalog,meta-externalagent,"
+            + "whatsapp,skypeuripreview,slack-imgproxy,embedly,vkshare,headlesschrome,phantomjs,curl/,wget/,"
+            + "python-requests,python-urllib,go-http-client,java/,apache-httpclient,node-fetch,axios/,libwww-perl,scrapy";
+
+    private static final int IPV4_RANGES = 500;
+    private static final int IPV6_RANGES = 100;
+    private static final int ADDRESSES = 1024;
+
+    private String[] tokens;
+    private String[] userAgents;
+    private String[] ipAddresses;
+    private TokenMatcher matcher;
+    private BotDetector detector;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        tokens = TOKENS.split(",");
+        userAgents = UserAgentCorpus.load();
+        matcher = new TokenMatcher(Arrays.asList(tokens));
+
+        // Random crawler-sized blocks, and addresses of which about one in ten falls in one
+        Random random = new Random(7);
+        List<String> ranges = new ArrayList<>();
+        List<String> inside = new ArrayList<>();
+        for (int i = 0; i < IPV4_RANGES; i++) {
+            String prefix = random.nextInt(224) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            ranges.add(prefix + ".0/24");
+            inside.add(prefix + "." + random.nextInt(256));
+        }
+        for (int i = 0; i < IPV6_RANGES; i++) {
+            String prefix = String.format("2001:%x:%x", random.nextInt(0x10000), random.nextInt(0x10000));
+            ranges.add(prefix + "::/48");
+            inside.add(prefix + ":" + Integer.toHexString(random.nextInt(0x10000)) + "::1");
+        }
+        detector = new BotDetector(new SimpleMeterRegistry(), true, BotDetector.Action.TAG, TOKENS, String.join(",", ranges));
+
+        ipAddresses = new String[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            if (random.nextInt(10) == 0) {
+                ipAddresses[i] = inside.get(random.nextInt(inside.size()));
+            } else if (random.nextInt(4) == 0) {
+                ipAddresses[i] = String.format("2a02:%x:%x::%x", random.nextInt(0x10000), random.nextInt(0x10000),
+                        random.nextInt(0x10000));
+            } else {
+                ipAddresses[i] = random.nextInt(224) + "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+                        + random.nextInt(256);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean matchUserAgent() {
+        return matcher.matches(userAgents[nextIndex(userAgents.length)]);
+    }
+
+    @Benchmark
+    public boolean containsAnyTokenBaseline() {
+        String userAgent = userAgents[nextIndex(userAgents.length)].toLowerCase(Locale.ROOT);
+        for (String token : tokens) {
+            if (userAgent.contains(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean ipInRange() {
+        return detector.isBot(null, ipAddresses[nextIndex(ipAddresses.length)]);
+    }
+
+    @Benchmark
+    public boolean isBot() {
+        int i = nextIndex(ipAddresses.length);
+        return detector.isBot(userAgents[i % userAgents.length], ipAddresses[i]);
+    }
+
+    // Each benchmark gets its own state, so next only ever cycles through one array
+    private int nextIndex(int length) {
+        next = next + 1 == length ? 0 : next + 1;
+        return next;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BotDetectorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
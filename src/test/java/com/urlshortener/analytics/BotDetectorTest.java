@@ -0,0 +1,79 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class BotDetectorTest {
+
+    private static final String BROWSER = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) Chrome/120.0 Safari/537.36";
+
+    @Test
+    void mergesNestedBlockWithoutShrinkingOuterOne() {
+        BotDetector detector = detector("10.0.0.0/8,10.1.0.0/16");
+
+        assertThat(detector.ipRangeCount()).isEqualTo(1);
+        assertThat(detector.isBot(BROWSER, "10.1.2.3")).isTrue();
+        // Past the end of the nested block but inside the outer one
+        assertThat(detector.isBot(BROWSER, "10.200.0.1")).isTrue();
+        assertThat(detector.isBot(BROWSER, "11.0.0.0")).isFalse();
+    }
+
+    @Test
+    void mergesOverlappingAndDuplicateBlocks() {
+        BotDetector detector = detector("192.0.2.0/25,192.0.2.64/26,192.0.2.0/24,192.0.2.10");
+
+        assertThat(detector.ipRangeCount()).isEqualTo(1);
+        assertThat(detector.isBot(BROWSER, "192.0.2.255")).isTrue();
+        assertThat(detector.isBot(BROWSER, "192.0.3.0")).isFalse();
+    }
+
+    @Test
+    void keepsDisjointBlocksApart() {
+        BotDetector detector = detector("66.249.64.0/19,198.51.100.7,2001:4860:4801::/48");
+
+        assertThat(detector.ipRangeCount()).isEqualTo(3);
+        assertThat(detector.isBot(BROWSER, "66.249.95.255")).isTrue();
+        assertThat(detector.isBot(BROWSER, "66.249.96.0")).isFalse();
+        assertThat(detector.isBot(BROWSER, "198.51.100.7")).isTrue();
+        assertThat(detector.isBot(BROWSER, "198.51.100.8")).isFalse();
+        // Between the IPv4 blocks
+        assertThat(detector.isBot(BROWSER, "100.0.0.1")).isFalse();
+        assertThat(detector.isBot(BROWSER, "2001:4860:4801:ffff::1")).isTrue();
+        assertThat(detector.isBot(BROWSER, "2001:4860:4802::1")).isFalse();
+    }
+
+    @Test
+    void ipv4BlocksCoverOnlyIpv4Addresses() {
+        BotDetector detector = detector("0.0.0.0/0");
+
+        assertThat(detector.isBot(BROWSER, "203.0.113.9")).isTrue();
+        assertThat(detector.isBot(BROWSER, "2001:db8::1")).isFalse();
+        assertThat(detector.isBot(BROWSER, "not an address")).isFalse();
+        assertThat(detector.isBot(BROWSER, null)).isFalse();
+    }
+
+    @Test
+    void matchesUserAgentTokens() {
+        BotDetector detector = detector("");
+
+        assertThat(detector.isBot("Mozilla/5.0 (compatible; Googlebot/2.1)", "203.0.113.9")).isTrue();
+        assertThat(detector.isBot("Slackbot-LinkExpanding 1.0", null)).isTrue();
+        assertThat(detector.isBot(BROWSER, "203.0.113.9")).isFalse();
+        assertThat(detector.isBot(null, null)).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidBlocks() {
+        assertThatIllegalArgumentException().isThrownBy(() -> detector("10.0.0.0/33"));
+        assertThatIllegalArgumentException().isThrownBy(() -> detector("10.0.0.0/x"));
+        assertThatIllegalArgumentException().isThrownBy(() -> detector("10.0.0/8"));
+        assertThatIllegalArgumentException().isThrownBy(() -> detector("2001:db8::/129"));
+    }
+
+    private static BotDetector detector(String ipRanges) {
+        return new BotDetector(new SimpleMeterRegistry(), true, BotDetector.Action.TAG, "bot,crawl,spider", ipRanges);
+    }
+}
@@ -0,0 +1,106 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClickLogTest {
+
+    private static final LocalDateTime CLICKED_AT = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversCommittedRecordsAndSkipsTornOne() throws IOException {
+        ClickLog first = clickLog(16);
+        for (long urlId = 1; urlId <= 3; urlId++) {
+            first.append(new ClickEvent(urlId, CLICKED_AT, "203.0.113.7", "curl/8.0", null));
+        }
+        first.close();
+        tearRecord(segmentFile(0), 1);
+
+        ClickLog recovered = clickLog(16);
+        List<ClickEvent> events = recovered.claimUnshipped(100);
+
+        assertThat(events).extracting(ClickEvent::urlId).containsExactly(1L, 3L);
+        assertThat(events.get(0).clickedAt()).isEqualTo(CLICKED_AT);
+        assertThat(events.get(0).ipAddress()).isEqualTo("203.0.113.7");
+        assertThat(events.get(0).userAgent()).isEqualTo("curl/8.0");
+        assertThat(events.get(0).referer()).isNull();
+
+        events.forEach(event -> recovered.acknowledge(event.logSequence()));
+        assertThat(segmentFile(0)).doesNotExist();
+        recovered.close();
+    }
+
+    @Test
+    void relayClaimsOnlyReleasedRecords() {
+        ClickLog clickLog = clickLog(16);
+        long queued = clickLog.append(event(1));
+        long deferred = clickLog.append(event(2));
+
+        assertThat(clickLog.claimUnshipped(100)).isEmpty();
+
+        clickLog.release(deferred);
+        List<ClickEvent> claimed = clickLog.claimUnshipped(100);
+        assertThat(claimed).extracting(ClickEvent::logSequence).containsExactly(deferred);
+        assertThat(clickLog.claimUnshipped(100)).isEmpty();
+
+        clickLog.acknowledge(queued);
+        clickLog.release(deferred);
+        assertThat(clickLog.claimUnshipped(100)).extracting(ClickEvent::logSequence).containsExactly(deferred);
+        clickLog.close();
+    }
+
+    @Test
+    void deletesRotatedSegmentOnceFullyAcknowledged() throws IOException {
+        ClickLog clickLog = clickLog(2);
+        long a = clickLog.append(event(1));
+        long b = clickLog.append(event(2));
+        long c = clickLog.append(event(3));
+        assertThat(c / 2).isEqualTo(1);
+
+        clickLog.acknowledge(a);
+        clickLog.acknowledge(b);
+        clickLog.close();
+
+        assertThat(segmentFile(0)).doesNotExist();
+        assertThat(segmentFile(1)).exists();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    private ClickLog clickLog(int recordsPerSegment) {
+        return new ClickLog(new SimpleMeterRegistry(), true, directory.toString(), recordsPerSegment,
+                ClickLog.FsyncPolicy.BATCH, 1);
+    }
+
+    private static ClickEvent event(long urlId) {
+        return new ClickEvent(urlId, CLICKED_AT, "198.51.100.1", null, "https://example.com/");
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(String.format("clicks-%020d.log", index));
+    }
+
+    // Clears the commit marker, as if the process died before the record's last write
+    private static void tearRecord(Path file, int slot) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), (long) (slot + 1) * ClickLog.RECORD_SIZE - 4);
+        }
+    }
+}
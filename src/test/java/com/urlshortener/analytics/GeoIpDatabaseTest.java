@@ -0,0 +1,181 @@
+package com.urlshortener.analytics;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeoIpDatabaseTest {
+
+    private static final String HEADER = "ip_start,ip_end,continent,country,stateprov,city";
+
+    @TempDir
+    static Path directory;
+
+    private static GeoIpDatabase database;
+
+    @BeforeAll
+    static void loadDatabase() throws IOException {
+        database = GeoIpDatabase.load(write("ranges.csv",
+                HEADER,
+                "0.0.0.0,0.255.255.255,ZZ,ZZ,,",
+                "1.0.0.0,1.0.0.255,OC,AU,Queensland,Brisbane",
+                // 1.0.1.0 - 1.0.1.255 is in no range
+                "1.0.2.0,1.0.3.255,AS,CN,Fujian,Fuzhou",
+                "",
+                // Above 127.255.255.255, so these only sort after the others when compared unsigned
+                "128.0.0.0,128.0.0.0,EU,DE,Berlin,Berlin",
+                "\"200.0.0.0\",\"200.255.255.255\",NA,US,California,\"San Francisco, \"\"SF\"\"\"",
+                "::ffff:201.0.0.0,::ffff:201.0.0.0,EU,DE,Berlin,Berlin",
+                "255.255.255.0,255.255.255.255,OC,NZ,Auckland,Auckland",
+                "::,::ffff,ZZ,,,",
+                "2001:db8::,2001:db8::ffff,EU,NL,North Holland,Amsterdam",
+                // Crosses from one upper 64 bits to the next, with the lower halves on both sides of the sign bit
+                "2001:db8:0:2:8000::,2001:db8:0:3:7fff:ffff:ffff:ffff,EU,FR,Ile-de-France,Paris",
+                "8000::,8000::ffff,AS,JP,Tokyo,Tokyo",
+                "ffff:ffff:ffff:ffff:ffff:ffff:ffff:0,ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff,SA,BR,,"), 3, 5);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            // address, country, city
+            "0.0.0.0, , ",
+            "0.255.255.255, , ",
+            "1.0.0.0, AU, Brisbane",
+            "1.0.0.128, AU, Brisbane",
+            "1.0.0.255, AU, Brisbane",
+            "1.0.2.0, CN, Fuzhou",
+            "1.0.3.255, CN, Fuzhou",
+            "128.0.0.0, DE, Berlin",
+            "200.0.0.0, US, 'San Francisco, \"SF\"'",
+            "200.255.255.255, US, 'San Francisco, \"SF\"'",
+            "255.255.255.0, NZ, Auckland",
+            "255.255.255.255, NZ, Auckland",
+            "::ffff:1.0.0.7, AU, Brisbane",
+            "::ffff:128.0.0.0, DE, Berlin",
+            "201.0.0.0, DE, Berlin",
+            "::, , ",
+            "::ffff, , ",
+            "2001:db8::, NL, Amsterdam",
+            "2001:db8::ffff, NL, Amsterdam",
+            "2001:db8:0:2:8000::, FR, Paris",
+            "2001:db8:0:2:ffff:ffff:ffff:ffff, FR, Paris",
+            "2001:db8:0:3::, FR, Paris",
+            "2001:db8:0:3:7fff:ffff:ffff:ffff, FR, Paris",
+            "8000::, JP, Tokyo",
+            "8000::ffff, JP, Tokyo",
+            "ffff:ffff:ffff:ffff:ffff:ffff:ffff:0, BR, ",
+            "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff, BR, "
+    })
+    void findsTheRangeContainingTheAddress(String address, String country, String city) {
+        assertThat(lookup(database, address)).isEqualTo(new GeoIpResolver.Location(country, city));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "1.0.1.0",
+            "1.0.1.255",
+            "1.0.4.0",
+            "127.255.255.255",
+            "128.0.0.1",
+            "199.255.255.255",
+            "201.0.0.1",
+            "255.255.254.255",
+            "::1:0",
+            "2001:db8::1:0",
+            "2001:db8:0:2:7fff:ffff:ffff:ffff",
+            "2001:db8:0:3:8000::",
+            "7fff:ffff:ffff:ffff:ffff:ffff:ffff:ffff",
+            "8000::1:0",
+            "ffff:ffff:ffff:ffff:ffff:ffff:fffe:ffff"
+    })
+    void findsNothingOutsideTheRanges(String address) {
+        assertThat(lookup(database, address)).isNull();
+    }
+
+    @Test
+    void sharesOneLocationPerCountryAndCity() {
+        assertThat(database.rangeCount()).isEqualTo(12);
+        assertThat(lookup(database, "201.0.0.0")).isSameAs(lookup(database, "128.0.0.0"));
+        assertThat(lookup(database, "::")).isSameAs(lookup(database, "0.0.0.0"));
+    }
+
+    @Test
+    void findsNothingInAnEmptyDatabase() {
+        assertThat(lookup(GeoIpDatabase.EMPTY, "0.0.0.0")).isNull();
+        assertThat(lookup(GeoIpDatabase.EMPTY, "::")).isNull();
+        assertThat(GeoIpDatabase.EMPTY.rangeCount()).isZero();
+    }
+
+    @Test
+    void readsFilesWithoutHeaderAndGzipped() throws IOException {
+        Path file = directory.resolve("ranges.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("1.0.0.0,1.0.0.255,OC,AU,Queensland,Brisbane\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        GeoIpDatabase gzipped = GeoIpDatabase.load(file, 3, 5);
+
+        assertThat(lookup(gzipped, "1.0.0.1")).isEqualTo(new GeoIpResolver.Location("AU", "Brisbane"));
+        assertThat(gzipped.rangeCount()).isOne();
+    }
+
+    @Test
+    void readsConfiguredColumns() throws IOException {
+        GeoIpDatabase database = GeoIpDatabase.load(write("columns.csv",
+                "1.0.0.0,1.0.0.255,Brisbane,AU"), 3, 2);
+
+        assertThat(lookup(database, "1.0.0.1")).isEqualTo(new GeoIpResolver.Location("AU", "Brisbane"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            // second row | error
+            "1.0.0.x,1.0.0.255,OC,AU,Queensland,Brisbane | Malformed GeoIP row at line 2",
+            "1.0.0.0,1.0.0.255,OC,AU,Queensland | Malformed GeoIP row at line 2",
+            "1.0.0.0,::ffff,OC,AU,Queensland,Brisbane | GeoIP range mixes IPv4 and IPv6 at line 2",
+            "1.0.1.255,1.0.1.0,OC,AU,Queensland,Brisbane | GeoIP IPv4 ranges are not sorted or overlap at line 2",
+            "1.0.0.255,1.0.1.0,OC,AU,Queensland,Brisbane | GeoIP IPv4 ranges are not sorted or overlap at line 2",
+            "0.0.0.0,0.0.0.255,ZZ,ZZ,, | GeoIP IPv4 ranges are not sorted or overlap at line 2",
+            "2001:db8::,2001:db8::ffff,EU,NL,North Holland,Amsterdam | GeoIP IPv6 ranges are not sorted or overlap at line 2",
+            "2001:db8::1:0,2001:db8::1,EU,NL,North Holland,Amsterdam | GeoIP IPv6 ranges are not sorted or overlap at line 2",
+            "2001:db8::ffff,2001:db8::1:0,EU,NL,North Holland,Amsterdam | GeoIP IPv6 ranges are not sorted or overlap at line 2",
+            "2001:db7::,2001:db7::ffff,EU,NL,North Holland,Amsterdam | GeoIP IPv6 ranges are not sorted or overlap at line 2"
+    })
+    void rejectsMalformedAndUnsortedFiles(String row, String error) throws IOException {
+        Path file = write("invalid.csv", firstRowFor(row), row);
+
+        assertThatThrownBy(() -> GeoIpDatabase.load(file, 3, 5))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith(error);
+    }
+
+    // A valid first row of the same address family, so the second is what fails
+    private static String firstRowFor(String row) {
+        return row.substring(0, row.indexOf(',')).contains(":")
+                ? "2001:db8::,2001:db8::ffff,EU,NL,North Holland,Amsterdam"
+                : "1.0.0.0,1.0.0.255,OC,AU,Queensland,Brisbane";
+    }
+
+    private static GeoIpResolver.Location lookup(GeoIpDatabase database, String address) {
+        IpAddresses.Parsed parsed = new IpAddresses.Parsed();
+        assertThat(IpAddresses.parse(address, parsed)).as(address).isTrue();
+        return parsed.isIpv4() ? database.findIpv4(parsed.ipv4()) : database.findIpv6(parsed.high(), parsed.low());
+    }
+
+    private static Path write(String name, String... lines) throws IOException {
+        return Files.write(directory.resolve(name), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
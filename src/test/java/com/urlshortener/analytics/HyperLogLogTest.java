@@ -0,0 +1,119 @@
+package com.urlshortener.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void roundTripsEmptySketch() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.estimate()).isZero();
+        assertThat(HyperLogLog.fromBytes(sketch.toBytes()).estimate()).isZero();
+        assertThat(HyperLogLog.fromBytes(null).estimate()).isZero();
+        assertThat(HyperLogLog.fromBytes(new byte[0]).estimate()).isZero();
+    }
+
+    @Test
+    void roundTripsSparseSketch() {
+        HyperLogLog sketch = sketchOf(0, 1_000);
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes[0]).isEqualTo((byte) 1);
+        assertThat(bytes.length).isLessThan(2 + 1_000 * 3 + 1);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void roundTripsDenseSketch() {
+        HyperLogLog sketch = sketchOf(0, 100_000);
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes[0]).isEqualTo((byte) 2);
+        assertThat(bytes).hasSize(2 + (1 << HyperLogLog.PRECISION) * 6 / 8);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void estimatesWithinErrorBoundAtEveryScale() {
+        for (int cardinality : new int[]{10, 100, 1_000, 10_000, 100_000, 1_000_000}) {
+            long estimate = sketchOf(cardinality, cardinality).estimate();
+            // Three standard errors, plus one for the smallest counts
+            assertThat((double) estimate).as("cardinality %d", cardinality)
+                    .isCloseTo(cardinality, within(3 * HyperLogLog.RELATIVE_STANDARD_ERROR * cardinality + 1));
+        }
+    }
+
+    @Test
+    void rootMeanSquareErrorMatchesPrecision() {
+        assertThat(HyperLogLog.RELATIVE_STANDARD_ERROR).isCloseTo(0.0081, within(0.0001));
+        // 42000 is where the classic estimator hands over from linear counting and is biased by about 2%
+        for (int cardinality : new int[]{10_000, 42_000, 100_000}) {
+            int trials = 20;
+            double squaredErrors = 0;
+            for (int trial = 0; trial < trials; trial++) {
+                double error = (sketchOf((long) trial << 32, cardinality).estimate() - cardinality) / (double) cardinality;
+                squaredErrors += error * error;
+            }
+            assertThat(Math.sqrt(squaredErrors / trials)).as("cardinality %d", cardinality)
+                    .isLessThan(1.5 * HyperLogLog.RELATIVE_STANDARD_ERROR);
+        }
+    }
+
+    @Test
+    void ignoresRepeatedValues() {
+        HyperLogLog sketch = sketchOf(0, 5_000);
+        byte[] before = sketch.toBytes();
+        for (long value = 0; value < 5_000; value++) {
+            sketch.add(bytes(value));
+        }
+
+        assertThat(sketch.toBytes()).isEqualTo(before);
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog small = sketchOf(0, 1_500);
+        HyperLogLog large = sketchOf(1_000, 60_000);
+        byte[] union = sketchOf(0, 61_000).toBytes();
+
+        HyperLogLog sparseIntoDense = large.copy();
+        sparseIntoDense.merge(small);
+        HyperLogLog denseIntoSparse = small.copy();
+        denseIntoSparse.merge(large);
+
+        assertThat(sparseIntoDense.toBytes()).isEqualTo(union);
+        assertThat(denseIntoSparse.toBytes()).isEqualTo(union);
+        sparseIntoDense.merge(large);
+        assertThat(sparseIntoDense.toBytes()).isEqualTo(union);
+    }
+
+    @Test
+    void rejectsUnknownFormats() {
+        assertThatIllegalArgumentException().isThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1, 12}));
+        assertThatIllegalArgumentException().isThrownBy(() -> HyperLogLog.fromBytes(new byte[]{3, 14}));
+        assertThatIllegalArgumentException().isThrownBy(() -> HyperLogLog.fromBytes(new byte[]{1}));
+    }
+
+    private static HyperLogLog sketchOf(long first, int count) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long value = first; value < first + count; value++) {
+            sketch.add(bytes(value));
+        }
+        return sketch;
+    }
+
+    private static byte[] bytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}
@@ -0,0 +1,97 @@
+package com.urlshortener.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressesTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            // text, canonical text
+            "192.0.2.1, 192.0.2.1",
+            "0.0.0.0, 0.0.0.0",
+            "255.255.255.255, 255.255.255.255",
+            "::, ::",
+            "::1, ::1",
+            "1::, 1::",
+            "2001:DB8::1, 2001:db8::1",
+            "2001:0db8:0000:0000:0000:0000:0000:0001, 2001:db8::1",
+            "2001:db8:0:0:1:0:0:1, 2001:db8::1:0:0:1",
+            "2001:0:0:1:0:0:0:1, 2001:0:0:1::1",
+            "2001:db8:0:1:1:1:1:1, 2001:db8:0:1:1:1:1:1",
+            "1::2:3:4:5:6:7, 1:0:2:3:4:5:6:7",
+            "fe80::1%eth0, fe80::1",
+            "fe80::a:b%25, fe80::a:b",
+            "::ffff:192.0.2.1, 192.0.2.1",
+            "::FFFF:c000:0201, 192.0.2.1",
+            "64:ff9b::192.0.2.33, 64:ff9b::c000:221",
+            "1:2:3:4:5:6:192.0.2.1, 1:2:3:4:5:6:c000:201",
+            "::192.0.2.1, ::c000:201"
+    })
+    void parsesAndFormatsCanonically(String text, String canonical) {
+        byte[] bytes = IpAddresses.toBytes(text, 32, 128);
+
+        assertThat(bytes).hasSize(16);
+        assertThat(IpAddresses.format(bytes)).isEqualTo(canonical);
+        assertThat(IpAddresses.toBytes(canonical, 32, 128)).isEqualTo(bytes);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", " ", "unknown", "192.0.2", "192.0.2.1.5", "192.0.2.256", "192.0.2.", ".192.0.2.1", "192..2.1",
+            "1234.0.2.1", "192.0.2.1 ", ":", ":::", "1:", ":1", "::1:", "1:::2", "1::2::3", "12345::",
+            "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8", "1:2:3:4:5:6:7:192.0.2.1",
+            "1:2:3:4:5:6::192.0.2.1", "::ffff:192.0.2", "::ffff:192.0.2.1:1", "g::1", "::١"
+    })
+    void rejectsMalformedAddresses(String text) {
+        assertThat(IpAddresses.isValid(text)).isFalse();
+        assertThat(IpAddresses.toBytes(text, 32, 128)).isNull();
+    }
+
+    @Test
+    void rejectsNull() {
+        assertThat(IpAddresses.isValid(null)).isFalse();
+        assertThat(IpAddresses.format(null)).isNull();
+        assertThat(IpAddresses.format(new byte[4])).isNull();
+    }
+
+    @Test
+    void parsesIpv4AndMappedFormsAlike() {
+        IpAddresses.Parsed plain = new IpAddresses.Parsed();
+        IpAddresses.Parsed mapped = new IpAddresses.Parsed();
+
+        assertThat(IpAddresses.parse("203.0.113.200", plain)).isTrue();
+        assertThat(IpAddresses.parse("::ffff:203.0.113.200", mapped)).isTrue();
+
+        assertThat(plain.isIpv4()).isTrue();
+        assertThat(mapped.isIpv4()).isTrue();
+        assertThat(plain.ipv4()).isEqualTo(mapped.ipv4()).isEqualTo(0xcb0071c8);
+        assertThat(plain.high()).isZero();
+        assertThat(plain.low()).isEqualTo(0x0000ffffcb0071c8L);
+    }
+
+    @Test
+    void parsesIpv6Halves() {
+        IpAddresses.Parsed address = new IpAddresses.Parsed();
+
+        assertThat(IpAddresses.parse("2001:db8:1:2:3:4:5:6", address)).isTrue();
+
+        assertThat(address.isIpv4()).isFalse();
+        assertThat(address.high()).isEqualTo(0x20010db800010002L);
+        assertThat(address.low()).isEqualTo(0x0003000400050006L);
+    }
+
+    @Test
+    void truncatesToPrefixLength() {
+        assertThat(IpAddresses.format(IpAddresses.toBytes("192.0.2.77", 24, 48))).isEqualTo("192.0.2.0");
+        assertThat(IpAddresses.format(IpAddresses.toBytes("192.0.2.77", 0, 48))).isEqualTo("0.0.0.0");
+        assertThat(IpAddresses.format(IpAddresses.toBytes("2001:db8:aaaa:bbbb::1", 24, 48))).isEqualTo("2001:db8:aaaa::");
+        assertThat(IpAddresses.format(IpAddresses.toBytes("2001:db8:aaaa:bbbb:cccc::1", 24, 80)))
+                .isEqualTo("2001:db8:aaaa:bbbb:cccc::");
+        assertThat(IpAddresses.format(IpAddresses.toBytes("2001:db8::1", 24, 0))).isEqualTo("::");
+    }
+}
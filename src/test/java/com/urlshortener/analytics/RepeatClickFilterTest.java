@@ -0,0 +1,149 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepeatClickFilterTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 12, 0);
+    private static final Duration WINDOW = Duration.ofSeconds(10);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void letsEverythingThroughWhenDisabled() {
+        RepeatClickFilter filter = new RepeatClickFilter(meterRegistry, false, WINDOW, true, 100);
+
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 0))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 0))).isFalse();
+    }
+
+    @Test
+    void recognizesSameUrlIpAndUserAgent() {
+        RepeatClickFilter filter = filter(100);
+
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 0))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 1_000))).isTrue();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 1_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.2", "curl", 1_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "wget", 1_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", null, 1_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", null, 2_000))).isTrue();
+        // Field boundaries count, so the same characters split differently are different clicks
+        assertThat(filter.isRepeat(click(1, "192.0.2.1c", "url", 2_000))).isFalse();
+        assertThat(meterRegistry.counter("clicks.dedup.repeats").count()).isEqualTo(2);
+    }
+
+    @Test
+    void remembersClicksForOneToTwoWindows() {
+        RepeatClickFilter filter = filter(100);
+        filter.isRepeat(click(1, "192.0.2.1", "curl", 0));
+        filter.isRepeat(click(2, "192.0.2.1", "curl", 9_999));
+
+        // The next generation still sees both through the previous table
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 10_000))).isTrue();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 19_999))).isTrue();
+        // The one after that has dropped the first generation
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 20_000))).isFalse();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 20_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 29_999))).isTrue();
+    }
+
+    @Test
+    void forgetsBothGenerationsAfterALongGap() {
+        RepeatClickFilter filter = filter(100);
+        filter.isRepeat(click(1, "192.0.2.1", "curl", 0));
+        filter.isRepeat(click(2, "192.0.2.1", "curl", 15_000));
+
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 60_000))).isFalse();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 60_000))).isFalse();
+        // The new generation starts at the click that opened it
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 69_999))).isTrue();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 80_000))).isFalse();
+    }
+
+    @Test
+    void lateClicksUseTheCurrentGeneration() {
+        RepeatClickFilter filter = filter(100);
+        filter.isRepeat(click(1, "192.0.2.1", "curl", 30_000));
+
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 0))).isFalse();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 31_000))).isTrue();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 1_000))).isTrue();
+    }
+
+    @Test
+    void forgottenClicksAreNewAgainWhileOthersStayFindable() {
+        // A small table, so probe sequences run through the removed slots
+        RepeatClickFilter filter = filter(16);
+        List<ClickEvent> clicks = new ArrayList<>();
+        for (int url = 0; url < 16; url++) {
+            ClickEvent click = click(url, "192.0.2.1", "curl", 0);
+            assertThat(filter.isRepeat(click)).isFalse();
+            clicks.add(click);
+        }
+
+        List<ClickEvent> rolledBack = new ArrayList<>();
+        for (int url = 0; url < 16; url += 2) {
+            rolledBack.add(clicks.get(url));
+        }
+        filter.forget(rolledBack);
+
+        for (int url = 1; url < 16; url += 2) {
+            assertThat(filter.isRepeat(clicks.get(url))).as("url %d", url).isTrue();
+        }
+        // Removed slots still count towards max-entries until the generation ends
+        for (ClickEvent click : rolledBack) {
+            assertThat(filter.isRepeat(click)).isFalse();
+        }
+        assertThat(meterRegistry.counter("clicks.dedup.saturated").count()).isEqualTo(8);
+    }
+
+    @Test
+    void forgetsClicksOfThePreviousGeneration() {
+        RepeatClickFilter filter = filter(100);
+        ClickEvent first = click(1, "192.0.2.1", "curl", 0);
+        filter.isRepeat(first);
+        filter.isRepeat(click(2, "192.0.2.1", "curl", 10_000));
+
+        filter.forget(List.of(first, click(3, "192.0.2.1", "curl", 10_000)));
+
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 11_000))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 12_000))).isTrue();
+        assertThat(filter.isRepeat(click(2, "192.0.2.1", "curl", 12_000))).isTrue();
+    }
+
+    @Test
+    void letsClicksThroughUnrememberedOnceFull() {
+        RepeatClickFilter filter = filter(2);
+        filter.isRepeat(click(1, "192.0.2.1", "curl", 0));
+        filter.isRepeat(click(2, "192.0.2.1", "curl", 0));
+
+        assertThat(filter.isRepeat(click(3, "192.0.2.1", "curl", 0))).isFalse();
+        assertThat(filter.isRepeat(click(3, "192.0.2.1", "curl", 0))).isFalse();
+        assertThat(filter.isRepeat(click(1, "192.0.2.1", "curl", 0))).isTrue();
+        assertThat(meterRegistry.counter("clicks.dedup.saturated").count()).isEqualTo(2);
+        assertThat(meterRegistry.get("clicks.dedup.entries").gauge().value()).isEqualTo(2);
+
+        // A new generation has room again
+        assertThat(filter.isRepeat(click(3, "192.0.2.1", "curl", 10_000))).isFalse();
+        assertThat(filter.isRepeat(click(3, "192.0.2.1", "curl", 10_000))).isTrue();
+        assertThat(meterRegistry.get("clicks.dedup.entries").gauge().value()).isEqualTo(3);
+    }
+
+    private RepeatClickFilter filter(int maxEntries) {
+        return new RepeatClickFilter(meterRegistry, true, WINDOW, true, maxEntries);
+    }
+
+    private static ClickEvent click(long urlId, String ipAddress, String userAgent, long millis) {
+        return new ClickEvent(urlId, START.plusNanos(millis * 1_000_000), ipAddress, userAgent, null);
+    }
+}
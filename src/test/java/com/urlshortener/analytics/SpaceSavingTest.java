@@ -0,0 +1,200 @@
+package com.urlshortener.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class SpaceSavingTest {
+
+    private static final int CAPACITY = 50;
+
+    @Test
+    void keepsExactCountsUntilFull() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.add("a", 2);
+        summary.add("b", 1);
+        summary.add("a", 1);
+
+        assertThat(summary.top(5)).containsExactly(
+                new SpaceSaving.Entry("a", 3, 0),
+                new SpaceSaving.Entry("b", 1, 0));
+        assertThat(summary.total()).isEqualTo(4);
+    }
+
+    @Test
+    void newValueTakesOverSmallestCounter() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.add("a", 5);
+        summary.add("b", 2);
+        summary.add("c", 1);
+
+        assertThat(summary.top(2)).containsExactly(
+                new SpaceSaving.Entry("a", 5, 0),
+                new SpaceSaving.Entry("c", 3, 2));
+    }
+
+    @Test
+    void singleSummaryHoldsErrorBounds() {
+        Clicks stream = zipf(new Random(1), 100_000, 2_000);
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        stream.addTo(summary);
+
+        assertBounds(summary, stream.exact, stream.total);
+    }
+
+    @Test
+    void mergedShardsHoldErrorBoundsOfCombinedClicks() {
+        Random random = new Random(2);
+        Clicks combined = new Clicks();
+        SpaceSaving merged = new SpaceSaving(CAPACITY);
+        for (int shard = 0; shard < 8; shard++) {
+            // Shards differ in size, and one is small enough never to fill up
+            Clicks stream = zipf(random, shard == 3 ? 20 : 5_000 + random.nextInt(30_000), 2_000);
+            SpaceSaving summary = new SpaceSaving(CAPACITY);
+            stream.addTo(summary);
+            assertBounds(summary, stream.exact, stream.total);
+
+            merged.merge(summary);
+            combined.addAll(stream);
+            assertBounds(merged, combined.exact, combined.total);
+        }
+    }
+
+    @Test
+    void mergeTreeHoldsErrorBoundsAcrossSerialization() {
+        Random random = new Random(3);
+        Clicks combined = new Clicks();
+        List<SpaceSaving> level = new ArrayList<>();
+        for (int shard = 0; shard < 16; shard++) {
+            Clicks stream = zipf(random, 10_000, 5_000);
+            SpaceSaving summary = new SpaceSaving(CAPACITY);
+            stream.addTo(summary);
+            level.add(summary);
+            combined.addAll(stream);
+        }
+        // Pairwise merges, each stored and read back as the rollups are
+        while (level.size() > 1) {
+            List<SpaceSaving> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                SpaceSaving left = SpaceSaving.fromBytes(level.get(i).toBytes(), CAPACITY);
+                left.merge(SpaceSaving.fromBytes(level.get(i + 1).toBytes(), CAPACITY));
+                next.add(left);
+            }
+            level = next;
+        }
+
+        assertBounds(level.get(0), combined.exact, combined.total);
+    }
+
+    @Test
+    void copyAndRoundTripKeepCounters() {
+        Clicks stream = zipf(new Random(4), 20_000, 500);
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        stream.addTo(summary);
+
+        assertThat(summary.copy().top(CAPACITY)).isEqualTo(summary.top(CAPACITY));
+        SpaceSaving restored = SpaceSaving.fromBytes(summary.toBytes(), CAPACITY);
+        assertThat(restored.top(CAPACITY)).isEqualTo(summary.top(CAPACITY));
+        assertThat(restored.total()).isEqualTo(summary.total());
+    }
+
+    @Test
+    void readingWithSmallerCapacityKeepsLargestCounters() {
+        Clicks stream = zipf(new Random(5), 20_000, 500);
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        stream.addTo(summary);
+
+        SpaceSaving smaller = SpaceSaving.fromBytes(summary.toBytes(), 10);
+
+        assertThat(smaller.top(CAPACITY)).isEqualTo(summary.top(10));
+    }
+
+    @Test
+    void readsEmptyAndRejectsUnknownFormats() {
+        assertThat(SpaceSaving.fromBytes(null, CAPACITY).top(10)).isEmpty();
+        assertThat(SpaceSaving.fromBytes(new byte[0], CAPACITY).total()).isZero();
+        assertThatIllegalArgumentException().isThrownBy(() -> SpaceSaving.fromBytes(new byte[]{2, 0}, CAPACITY));
+        assertThatIllegalArgumentException().isThrownBy(() -> SpaceSaving.fromBytes(new byte[]{1, 0}, CAPACITY));
+    }
+
+    // count - error <= true count <= count, error <= total / capacity, and every value above total / capacity is kept
+    private static void assertBounds(SpaceSaving summary, Map<String, Long> exact, long total) {
+        assertThat(summary.total()).isEqualTo(total);
+        List<SpaceSaving.Entry> entries = summary.top(Integer.MAX_VALUE);
+        assertThat(entries).hasSizeLessThanOrEqualTo(CAPACITY);
+        Set<String> kept = new HashSet<>();
+        for (SpaceSaving.Entry entry : entries) {
+            long trueCount = exact.getOrDefault(entry.value(), 0L);
+            assertThat(trueCount).as(entry.value()).isBetween(entry.count() - entry.error(), entry.count());
+            assertThat(entry.error() * CAPACITY).as(entry.value()).isLessThanOrEqualTo(total);
+            kept.add(entry.value());
+        }
+        exact.forEach((value, count) -> {
+            if (count * CAPACITY > total) {
+                assertThat(kept).as("heavy hitter %s with %d of %d", value, count, total).contains(value);
+            }
+        });
+    }
+
+    // Values ranked by a Zipf distribution with exponent 1, clicked with weight 1 or, now and then, a sampling weight
+    private static Clicks zipf(Random random, int clicks, int values) {
+        double[] cumulative = new double[values];
+        double sum = 0;
+        for (int rank = 1; rank <= values; rank++) {
+            sum += 1.0 / rank;
+            cumulative[rank - 1] = sum;
+        }
+        Clicks stream = new Clicks();
+        for (int i = 0; i < clicks; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = values - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            stream.add("value-" + low, random.nextInt(20) == 0 ? 10 : 1);
+        }
+        return stream;
+    }
+
+    private static final class Clicks {
+
+        private final List<String> values = new ArrayList<>();
+        private final List<Long> weights = new ArrayList<>();
+        private final Map<String, Long> exact = new HashMap<>();
+        private long total;
+
+        void add(String value, long weight) {
+            values.add(value);
+            weights.add(weight);
+            exact.merge(value, weight, Long::sum);
+            total += weight;
+        }
+
+        void addAll(Clicks other) {
+            for (int i = 0; i < other.values.size(); i++) {
+                add(other.values.get(i), other.weights.get(i));
+            }
+        }
+
+        void addTo(SpaceSaving summary) {
+            for (int i = 0; i < values.size(); i++) {
+                summary.add(values.get(i), weights.get(i));
+            }
+        }
+    }
+}
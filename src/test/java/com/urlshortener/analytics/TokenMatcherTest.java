@@ -0,0 +1,99 @@
+package com.urlshortener.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class TokenMatcherTest {
+
+    @Test
+    void followsFailureLinksIntoOtherTokens() {
+        TokenMatcher matcher = new TokenMatcher(List.of("he", "she", "his", "hers"));
+
+        assertThat(matcher.matches("ushers")).isTrue();
+        assertThat(matcher.matches("xhix")).isFalse();
+        assertThat(matcher.matches("this")).isTrue();
+    }
+
+    @Test
+    void matchesTokenEndingInsideLongerPartialMatch() {
+        // After "abc" the automaton must fall back to "bc" to finish "bce"
+        TokenMatcher matcher = new TokenMatcher(List.of("abcd", "bce"));
+
+        assertThat(matcher.matches("xabce")).isTrue();
+        assertThat(matcher.matches("xabcx")).isFalse();
+        assertThat(matcher.matches("abcd")).isTrue();
+    }
+
+    @Test
+    void acceptsStateWhoseSuffixIsAToken() {
+        // "bot" ends inside "robots" before "robots" itself is complete
+        TokenMatcher matcher = new TokenMatcher(List.of("robots", "bot"));
+
+        assertThat(matcher.matches("Mozilla robot/1.0")).isTrue();
+    }
+
+    @Test
+    void ignoresAsciiCase() {
+        TokenMatcher matcher = new TokenMatcher(List.of("GoogleBot", "facebookexternalhit"));
+
+        assertThat(matcher.matches("Mozilla/5.0 (compatible; Googlebot/2.1)")).isTrue();
+        assertThat(matcher.matches("FACEBOOKEXTERNALHIT/1.1")).isTrue();
+        assertThat(matcher.matches("Mozilla/5.0 (Windows NT 10.0)")).isFalse();
+    }
+
+    @Test
+    void nonAsciiCharactersBreakMatches() {
+        TokenMatcher matcher = new TokenMatcher(List.of("bot"));
+
+        assertThat(matcher.matches("boét")).isFalse();
+        assertThat(matcher.matches("éboté")).isTrue();
+        assertThat(matcher.matches(null)).isFalse();
+        assertThat(matcher.matches("")).isFalse();
+    }
+
+    @Test
+    void sharesPrefixStates() {
+        TokenMatcher matcher = new TokenMatcher(List.of("crawl", "crawler", "cra"));
+
+        // Root plus c, r, a, w, l, e, r
+        assertThat(matcher.stateCount()).isEqualTo(8);
+    }
+
+    @Test
+    void rejectsEmptyAndNonAsciiTokens() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new TokenMatcher(List.of("bot", "")));
+        assertThatIllegalArgumentException().isThrownBy(() -> new TokenMatcher(List.of("böt")));
+    }
+
+    @Test
+    void agreesWithContainsOnRandomText() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> tokens = List.of(randomText(random, 1 + random.nextInt(4)),
+                    randomText(random, 1 + random.nextInt(4)), randomText(random, 1 + random.nextInt(4)));
+            TokenMatcher matcher = new TokenMatcher(tokens);
+            for (int i = 0; i < 50; i++) {
+                String text = randomText(random, random.nextInt(20));
+                String lower = text.toLowerCase(Locale.ROOT);
+                boolean expected = tokens.stream().anyMatch(token -> lower.contains(token.toLowerCase(Locale.ROOT)));
+                assertThat(matcher.matches(text)).as("%s in %s", tokens, text).isEqualTo(expected);
+            }
+        }
+    }
+
+    // A three-letter alphabet in both cases, so tokens overlap often
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(3));
+            text.append(random.nextBoolean() ? c : Character.toUpperCase(c));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-click cost of user agent classification over the real user agent corpus: a cache hit, a
+ * single-pass scan with nothing cached, and the lowercase-and-contains parsing it replaced, which
+ * parsed the browser a second time for a debug log. Runs with the GC profiler, so allocations
+ * per click are reported too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserAgentClassifierBenchmark {
+
+    private String[] userAgents;
+    private UserAgentClassifier cached;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        userAgents = UserAgentCorpus.load();
+        cached = new UserAgentClassifier(new SimpleMeterRegistry(), 10_000);
+        for (String userAgent : userAgents) {
+            cached.classify(userAgent);
+        }
+    }
+
+    @Benchmark
+    public UserAgentClassifier.Classification classifyCached() {
+        return cached.classify(nextUserAgent());
+    }
+
+    @Benchmark
+    public UserAgentClassifier.Classification classifyUncached() {
+        return UserAgentClassifier.classifyUncached(nextUserAgent());
+    }
+
+    @Benchmark
+    public void lowercaseContainsBaseline(Blackhole blackhole) {
+        String userAgent = nextUserAgent();
+        blackhole.consume(BaselineUserAgentParser.parseDeviceType(userAgent));
+        blackhole.consume(BaselineUserAgentParser.parseBrowser(userAgent));
+        blackhole.consume(BaselineUserAgentParser.parseOperatingSystem(userAgent));
+        blackhole.consume(BaselineUserAgentParser.parseBrowser(userAgent));
+    }
+
+    private String nextUserAgent() {
+        next = next + 1 == userAgents.length ? 0 : next + 1;
+        return userAgents[next];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserAgentClassifierBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
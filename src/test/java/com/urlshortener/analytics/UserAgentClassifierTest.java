@@ -0,0 +1,46 @@
+package com.urlshortener.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserAgentClassifierTest {
+
+    private final UserAgentClassifier classifier = new UserAgentClassifier(new SimpleMeterRegistry(), 100);
+
+    @Test
+    void agreesWithLowercaseContainsParsingOnCorpus() {
+        for (String userAgent : UserAgentCorpus.load()) {
+            assertThat(classifier.classify(userAgent)).as(userAgent)
+                    .isEqualTo(BaselineUserAgentParser.classify(userAgent));
+        }
+    }
+
+    @Test
+    void classifiesCommonBrowsers() {
+        assertThat(classifier.classify("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+                + "Chrome/120.0.0.0 Safari/537.36 Edg/120.0.0.0"))
+                .isEqualTo(new UserAgentClassifier.Classification("Desktop", "Edge", "Windows"));
+        assertThat(classifier.classify("Mozilla/5.0 (Android 14; Mobile; rv:121.0) Gecko/121.0 Firefox/121.0"))
+                .isEqualTo(new UserAgentClassifier.Classification("Mobile", "Firefox", "Android"));
+        assertThat(classifier.classify("Mozilla/5.0 (Linux; Android 12; SM-X200) AppleWebKit/537.36 "
+                + "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36"))
+                .isEqualTo(new UserAgentClassifier.Classification("Mobile", "Chrome", "Android"));
+    }
+
+    @Test
+    void matchesTokensInAnyCase() {
+        assertThat(classifier.classify("FIREFOX ON LINUX"))
+                .isEqualTo(new UserAgentClassifier.Classification("Desktop", "Firefox", "Linux"));
+    }
+
+    @Test
+    void classifiesMissingAndOverlongUserAgents() {
+        assertThat(classifier.classify(null)).isSameAs(UserAgentClassifier.UNKNOWN);
+        assertThat(classifier.classify("")).isEqualTo(new UserAgentClassifier.Classification("Desktop", "Other", "Other"));
+        String overlong = "Mozilla/5.0 (X11; Linux x86_64) Firefox/121.0 " + "x".repeat(1000);
+        assertThat(classifier.classify(overlong))
+                .isEqualTo(new UserAgentClassifier.Classification("Desktop", "Firefox", "Linux"));
+    }
+}
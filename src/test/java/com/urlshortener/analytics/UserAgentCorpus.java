@@ -0,0 +1,28 @@
+package com.urlshortener.analytics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Real user agents from user-agents.txt, for benchmarks
+final class UserAgentCorpus {
+
+    private UserAgentCorpus() {
+    }
+
+    static String[] load() {
+        try (InputStream in = UserAgentCorpus.class.getResourceAsStream("/user-agents.txt")) {
+            if (in == null) {
+                throw new IllegalStateException("user-agents.txt is not on the classpath");
+            }
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+                    .filter(line -> !line.isBlank() && !line.startsWith("#"))
+                    .toArray(String[]::new);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.urlshortener.repository;
+
+import com.urlshortener.UrlShortenerApplication;
+import com.urlshortener.entity.Url;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving one redirect from the database: the Url entity in a read-only transaction,
+ * as redirects were resolved before, against the JDBC projection. Runs against the in-memory H2
+ * database of the test profile, so the numbers are the persistence overhead without a network
+ * round trip. Runs with the GC profiler, so allocations per redirect are reported too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlLookupBenchmark {
+
+    private static final String SHORT_CODE = "bench01";
+
+    private ConfigurableApplicationContext context;
+    private UrlRepository urlRepository;
+    private TransactionTemplate readOnly;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                // The token provider base64-decodes its secret, which the test profile's isn't
+                .run("--app.jwt.secret=YmVuY2htYXJrLXNlY3JldC1rZXktYXQtbGVhc3QtMzItYnl0ZXMtbG9uZw==",
+                        "--logging.level.root=WARN");
+        urlRepository = context.getBean(UrlRepository.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        urlRepository.save(Url.builder()
+                .shortCode(SHORT_CODE)
+                .originalUrl("https://example.com/articles/2024/03/benchmarking-redirects?utm_source=newsletter")
+                .build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String entityLookup() {
+        return readOnly.execute(status -> urlRepository.findByShortCode(SHORT_CODE)
+                .map(Url::getOriginalUrl)
+                .orElseThrow());
+    }
+
+    @Benchmark
+    public String projectionLookup() {
+        return urlRepository.findLookupByShortCode(SHORT_CODE)
+                .map(UrlLookup::originalUrl)
+                .orElseThrow();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UrlLookupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}